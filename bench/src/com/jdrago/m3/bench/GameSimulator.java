@@ -0,0 +1,387 @@
+package com.jdrago.m3.bench;
+
+import com.jdrago.m3.rules.Board;
+import com.jdrago.m3.rules.Slides;
+import com.jdrago.m3.rules.Solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Plays whole games of the rules in rules.Board with no one at the controls, for tuning the
+// starting turns, bell turns and progress scoring without playing by hand. Run with:
+//
+//     ant -f bench/build.xml simulate -Dsim.args="-games 100000 -policy greedy"
+//
+// Options:
+//
+//   -games N        games to play (default 10000)
+//   -policy P       random, greedy or solver (default greedy)
+//   -seed S         base seed; game i is seeded from S and i alone (default 1)
+//   -threads T      worker threads (default: all cores)
+//   -turns N        starting turns (default Board.STARTING_TURNS)
+//   -samples N      solver policy: refill samples per position (default 8)
+//   -turn-value V   greedy/solver policies: progress one extra turn is worth (default 10)
+//
+// Every game's board, refills and policy choices come from its own seed, and the totals don't
+// depend on which thread played what, so a given set of options always prints the same report
+// (apart from the timing).
+public class GameSimulator
+{
+    static private final int DEFAULT_GAMES = 10000;
+    static private final int DEFAULT_SOLVER_SAMPLES = 8;
+
+    // Histogram ranges; anything above lands in the last bucket
+    static private final int MAX_PROGRESS = 4096;
+    static private final int MAX_CASCADE = 32;
+    static private final int MAX_TURNS_GAINED = 64;
+    static private final int MAX_MOVES = 512;
+
+    // --------------------------------------------------------------------------------------------
+    // Policies
+
+    // Picks the next slide (an index into Slides) for board, or -1 to give up. Each worker has
+    // its own instance.
+    interface Policy
+    {
+        void startGame(long seed);
+        int choose(Board board);
+    }
+
+    // Any legal slide, uniformly
+    static class RandomPolicy implements Policy
+    {
+        private int[] legal_ = new int[Slides.COUNT];
+        private long state_;
+
+        public void startGame(long seed)
+        {
+            state_ = seed ^ 0x5DEECE66DL;
+        }
+
+        public int choose(Board board)
+        {
+            int count = Slides.legal(board, legal_);
+            if(count == 0)
+                return -1;
+            state_ += 0x9E3779B97F4A7C15L;
+            long z = state_;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            return legal_[(int)(((z >>> 32) * count) >>> 32)];
+        }
+    }
+
+    // The legal slide whose first shatter is worth the most. Only the first shatter: everything
+    // after it depends on refills a player can't see yet.
+    static class GreedyPolicy implements Policy
+    {
+        private double turnValue_;
+        private Board scratch_ = new Board(0);
+
+        GreedyPolicy(double turnValue)
+        {
+            turnValue_ = turnValue;
+        }
+
+        public void startGame(long seed)
+        {
+        }
+
+        public int choose(Board board)
+        {
+            int best = -1;
+            double bestValue = -1;
+            for(int slide = 0; slide < Slides.COUNT; slide++)
+            {
+                scratch_.copyFrom(board);
+                Slides.apply(scratch_, slide);
+                if(!scratch_.shatter())
+                    continue;
+                double value = scratch_.lastProgress() + (scratch_.lastTurnsGained() * turnValue_);
+                if(value > bestValue)
+                {
+                    best = slide;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+    }
+
+    // Solver's top pick, with a fixed sample count rather than a time budget so games replay
+    static class SolverPolicy implements Policy
+    {
+        private Solver solver_;
+
+        SolverPolicy(int samples, double turnValue)
+        {
+            solver_ = new Solver(1, 16);
+            solver_.setTurnValue(turnValue);
+            solver_.setMaxSamples(samples);
+        }
+
+        public void startGame(long seed)
+        {
+            solver_.clear();
+        }
+
+        public int choose(Board board)
+        {
+            Solver.Result result = solver_.solve(board, Long.MAX_VALUE / 2);
+            return (result.count() > 0) ? result.slide(0) : -1;
+        }
+
+        void shutdown()
+        {
+            solver_.shutdown();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Stats
+
+    static class IntHistogram
+    {
+        long[] counts;
+        long total;
+        long sum;
+        int max;
+
+        IntHistogram(int maxValue)
+        {
+            counts = new long[maxValue + 1];
+        }
+
+        void record(int value)
+        {
+            counts[Math.min(Math.max(value, 0), counts.length - 1)]++;
+            total++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void add(IntHistogram other)
+        {
+            for(int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+            total += other.total;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        double mean()
+        {
+            return (total > 0) ? (double)sum / total : 0;
+        }
+
+        int percentile(double p)
+        {
+            long rank = (long)Math.ceil(p * total);
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if((seen >= rank) && (seen > 0))
+                    return i;
+            }
+            return counts.length - 1;
+        }
+
+        String summary()
+        {
+            return String.format("mean %.2f  p5 %d  p25 %d  p50 %d  p75 %d  p95 %d  p99 %d  max %d",
+                mean(), percentile(0.05), percentile(0.25), percentile(0.50), percentile(0.75), percentile(0.95), percentile(0.99), max);
+        }
+
+        // value: count (share) for every value seen, up to limit lines
+        String table(int limit)
+        {
+            StringBuilder out = new StringBuilder();
+            int lines = 0;
+            for(int i = 0; (i < counts.length) && (lines < limit); i++)
+            {
+                if(counts[i] == 0)
+                    continue;
+                String label = (i == counts.length - 1) ? (i + "+") : Integer.toString(i);
+                out.append(String.format("    %5s: %10d  %6.2f%%%n", label, counts[i], (100.0 * counts[i]) / total));
+                lines++;
+            }
+            return out.toString();
+        }
+    }
+
+    static class Stats
+    {
+        IntHistogram progress = new IntHistogram(MAX_PROGRESS);
+        IntHistogram moves = new IntHistogram(MAX_MOVES);
+        IntHistogram cascades = new IntHistogram(MAX_CASCADE);
+        IntHistogram turnsGainedPerMove = new IntHistogram(MAX_TURNS_GAINED);
+        IntHistogram turnsGainedPerGame = new IntHistogram(MAX_TURNS_GAINED);
+        long stuck;
+
+        void add(Stats other)
+        {
+            progress.add(other.progress);
+            moves.add(other.moves);
+            cascades.add(other.cascades);
+            turnsGainedPerMove.add(other.turnsGainedPerMove);
+            turnsGainedPerGame.add(other.turnsGainedPerGame);
+            stuck += other.stuck;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Main
+
+    private int games_ = DEFAULT_GAMES;
+    private String policy_ = "greedy";
+    private long seed_ = 1;
+    private int threads_ = Runtime.getRuntime().availableProcessors();
+    private int turns_ = Board.STARTING_TURNS;
+    private int samples_ = DEFAULT_SOLVER_SAMPLES;
+    private double turnValue_ = Solver.DEFAULT_TURN_VALUE;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException
+    {
+        GameSimulator simulator = new GameSimulator();
+        simulator.parse(args);
+        simulator.run();
+    }
+
+    private void parse(String[] args)
+    {
+        for(int i = 0; i < args.length; i++)
+        {
+            String option = args[i];
+            if(i + 1 >= args.length)
+                usage("missing value for " + option);
+            String value = args[++i];
+            if(option.equals("-games"))
+                games_ = Integer.parseInt(value);
+            else if(option.equals("-policy"))
+                policy_ = value;
+            else if(option.equals("-seed"))
+                seed_ = Long.parseLong(value);
+            else if(option.equals("-threads"))
+                threads_ = Integer.parseInt(value);
+            else if(option.equals("-turns"))
+                turns_ = Integer.parseInt(value);
+            else if(option.equals("-samples"))
+                samples_ = Integer.parseInt(value);
+            else if(option.equals("-turn-value"))
+                turnValue_ = Double.parseDouble(value);
+            else
+                usage("unknown option " + option);
+        }
+        if(!policy_.equals("random") && !policy_.equals("greedy") && !policy_.equals("solver"))
+            usage("unknown policy " + policy_);
+    }
+
+    static private void usage(String problem)
+    {
+        System.err.println(problem);
+        System.err.println("usage: GameSimulator [-games N] [-policy random|greedy|solver] [-seed S] [-threads T] [-turns N] [-samples N] [-turn-value V]");
+        System.exit(2);
+    }
+
+    private Policy newPolicy()
+    {
+        if(policy_.equals("random"))
+            return new RandomPolicy();
+        if(policy_.equals("greedy"))
+            return new GreedyPolicy(turnValue_);
+        return new SolverPolicy(samples_, turnValue_);
+    }
+
+    private void run() throws InterruptedException, ExecutionException
+    {
+        System.out.println(String.format("%d games, policy %s, seed %d, %d thread(s), %d starting turns",
+            games_, policy_, seed_, threads_, turns_));
+
+        final AtomicLong next = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads_);
+        List<Future<Stats>> workers = new ArrayList<Future<Stats>>();
+        long start = System.nanoTime();
+        for(int t = 0; t < threads_; t++)
+        {
+            workers.add(executor.submit(new Callable<Stats>()
+            {
+                @Override
+                public Stats call()
+                {
+                    Stats stats = new Stats();
+                    Policy policy = newPolicy();
+                    Board board = new Board(0);
+                    long game;
+                    while((game = next.getAndIncrement()) < games_)
+                        play(board, policy, gameSeed(game), stats);
+                    if(policy instanceof SolverPolicy)
+                        ((SolverPolicy)policy).shutdown();
+                    return stats;
+                }
+            }));
+        }
+
+        Stats total = new Stats();
+        for(Future<Stats> worker : workers)
+            total.add(worker.get());
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("%.2f s, %.1f games/sec, %.1f moves/sec",
+            seconds, games_ / seconds, total.moves.sum / seconds));
+        System.out.println();
+        System.out.println("Final progress:        " + total.progress.summary());
+        System.out.println("Moves per game:        " + total.moves.summary());
+        System.out.println("Turns gained per game: " + total.turnsGainedPerGame.summary());
+        System.out.println("Stuck (no legal move): " + total.stuck + " game(s)");
+        System.out.println();
+        System.out.println("Cascade rounds per move:");
+        System.out.print(total.cascades.table(MAX_CASCADE + 1));
+        System.out.println("Turns gained per move:");
+        System.out.print(total.turnsGainedPerMove.table(MAX_TURNS_GAINED + 1));
+    }
+
+    private long gameSeed(long game)
+    {
+        long z = seed_ + ((game + 1) * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void play(Board board, Policy policy, long seed, Stats stats)
+    {
+        board.setSeed(seed);
+        board.newGame();
+        board.setTurns(turns_);
+        policy.startGame(seed);
+
+        int moves = 0;
+        int turnsGained = 0;
+        while(board.turns() > 0)
+        {
+            int slide = policy.choose(board);
+            if((slide < 0) || !Slides.play(board, slide))
+            {
+                stats.stuck++;
+                break;
+            }
+            moves++;
+            turnsGained += board.lastTurnsGained();
+            stats.cascades.record(board.lastCascades());
+            stats.turnsGainedPerMove.record(board.lastTurnsGained());
+        }
+        stats.progress.record(board.progress());
+        stats.moves.record(moves);
+        stats.turnsGainedPerGame.record(turnsGained);
+    }
+}
@@ -0,0 +1,189 @@
+package com.jdrago.m3.bench;
+
+import com.jdrago.m3.CommandBuffer;
+import com.jdrago.m3.RecordingBackend;
+import com.jdrago.m3.SoftwareBackend;
+import com.jdrago.m3.SpriteBatch;
+import com.jdrago.m3.Texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+import javax.imageio.ImageIO;
+
+// Runs a fixed frame through the real decode path (CommandBuffer -> SpriteBatch -> GLBackend) on
+// the software rasterizer and compares the result with a golden image, so a change to decode,
+// transform or batching that alters what ends up on screen fails here instead of on a device.
+// Also prints the GL calls the frame makes, as recorded by RecordingBackend.
+//
+//     ant -f bench/build.xml golden                       (compare)
+//     ant -f bench/build.xml golden -Dgolden.update=true  (accept the current output)
+//
+// Exits non-zero on a mismatch, and writes what it got next to the golden as *.actual.png.
+public class GoldenFrame
+{
+    static private final int WIDTH = 270;
+    static private final int HEIGHT = 480;
+    static private final int PAGE_SIZE = 64;
+
+    // Per channel, out of 255; covers float rounding differences between JVMs
+    static private final int TOLERANCE = 2;
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            System.err.println("usage: GoldenFrame golden.png [update]");
+            System.exit(2);
+        }
+        File golden = new File(args[0]);
+        boolean update = (args.length > 1) && Boolean.parseBoolean(args[1]);
+
+        Texture[] textures = new Texture[2];
+        SoftwareBackend software = new SoftwareBackend();
+        for(int i = 0; i < textures.length; i++)
+        {
+            textures[i] = new Texture();
+            textures[i].id = i + 1;
+            textures[i].width = PAGE_SIZE;
+            textures[i].height = PAGE_SIZE;
+            software.setTexturePixels(textures[i], PAGE_SIZE, PAGE_SIZE, page(i));
+        }
+
+        CommandBuffer frame = frame();
+        float[] viewProj = viewProjMatrix();
+        SpriteBatch spriteBatch = new SpriteBatch();
+
+        RecordingBackend recording = new RecordingBackend(true);
+        recording.beginFrame(WIDTH, HEIGHT, 0.0f, 0.25f, 0.0f, viewProj);
+        spriteBatch.submit(frame, textures, recording);
+        recording.endFrame();
+        System.out.print(recording.dump());
+
+        software.beginFrame(WIDTH, HEIGHT, 0.0f, 0.25f, 0.0f, viewProj);
+        spriteBatch.submit(frame, textures, software);
+        software.endFrame();
+
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        actual.setRGB(0, 0, WIDTH, HEIGHT, software.pixels(), 0, WIDTH);
+
+        if(update || !golden.isFile())
+        {
+            ImageIO.write(actual, "png", golden);
+            System.out.println("Wrote " + golden);
+            return;
+        }
+
+        BufferedImage expected = ImageIO.read(golden);
+        int mismatched = countMismatches(expected, actual);
+        if(mismatched > 0)
+        {
+            File actualFile = new File(golden.getPath().replaceFirst("\\.png$", "") + ".actual.png");
+            ImageIO.write(actual, "png", actualFile);
+            System.out.println(mismatched + " pixel(s) differ from " + golden + ", see " + actualFile);
+            System.exit(1);
+        }
+        System.out.println("Matches " + golden);
+    }
+
+    // Two atlas pages: page 0 is an opaque checkerboard, page 1 a radial blob with soft alpha
+    static private int[] page(int index)
+    {
+        int[] argb = new int[PAGE_SIZE * PAGE_SIZE];
+        for(int y = 0; y < PAGE_SIZE; y++)
+        {
+            for(int x = 0; x < PAGE_SIZE; x++)
+            {
+                int pixel;
+                if(index == 0)
+                {
+                    boolean light = (((x / 8) + (y / 8)) & 1) == 0;
+                    pixel = light ? 0xffe0e0e0 : 0xff3060c0;
+                }
+                else
+                {
+                    double dx = (x + 0.5) / PAGE_SIZE - 0.5;
+                    double dy = (y + 0.5) / PAGE_SIZE - 0.5;
+                    double d = Math.min(1, Math.sqrt(dx * dx + dy * dy) * 2);
+                    int alpha = (int)Math.round((1 - d) * 255);
+                    pixel = (alpha << 24) | 0x00ff8020;
+                }
+                argb[(y * PAGE_SIZE) + x] = pixel;
+            }
+        }
+        return argb;
+    }
+
+    // A handful of quads covering what the game does: whole and partial source rects, centered and
+    // top-left anchors, rotation, tint and translucency, and a page switch in the middle
+    static private CommandBuffer frame()
+    {
+        float[][] quads = {
+            // tex, srcX, srcY, srcW, srcH, dstX, dstY, dstW, dstH, rot, anchorX, anchorY, r, g, b, a
+            { 0, 0, 0, 64, 64, 135, 120, 200, 200, 0, 0.5f, 0.5f, 1, 1, 1, 1 },
+            { 0, 16, 16, 32, 32, 60, 300, 80, 80, (float)(Math.PI / 6), 0.5f, 0.5f, 1, 0.5f, 0.5f, 1 },
+            { 1, 0, 0, 64, 64, 135, 120, 160, 160, 0, 0.5f, 0.5f, 1, 1, 1, 1 },
+            { 1, 0, 0, 64, 64, 200, 330, 90, 120, (float)(-Math.PI / 4), 0.5f, 0.5f, 0.5f, 1, 1, 0.75f },
+            { 0, 0, 0, 8, 8, 10, 420, 250, 40, 0, 0, 0, 1, 1, 1, 0.5f },
+        };
+
+        CommandBuffer buffer = new CommandBuffer(quads.length);
+        FloatBuffer commands = buffer.floats();
+        for(int i = 0; i < quads.length; i++)
+        {
+            for(int f = 0; f < CommandBuffer.COMMAND_SIZE; f++)
+                commands.put((i * CommandBuffer.COMMAND_SIZE) + f, quads[i][f]);
+        }
+        buffer.setQuadCount(quads.length);
+        return buffer;
+    }
+
+    // What M3Renderer sets up: the camera at z=10 looking down -z, and a pixel-space ortho
+    // projection with y pointing down
+    static private float[] viewProjMatrix()
+    {
+        float[] view = new float[16];
+        LegacyMatrix.setIdentityM(view, 0);
+        LegacyMatrix.translateM(view, 0, 0, 0, -10);
+
+        float[] proj = new float[16];
+        LegacyMatrix.setIdentityM(proj, 0);
+        proj[0] = 2.0f / WIDTH;
+        proj[5] = -2.0f / HEIGHT;
+        proj[10] = -2.0f / 20;
+        proj[12] = -1;
+        proj[13] = 1;
+        proj[14] = -1;
+
+        float[] viewProj = new float[16];
+        LegacyMatrix.multiplyMM(viewProj, 0, proj, 0, view, 0);
+        return viewProj;
+    }
+
+    static private int countMismatches(BufferedImage expected, BufferedImage actual)
+    {
+        if((expected.getWidth() != actual.getWidth()) || (expected.getHeight() != actual.getHeight()))
+            return actual.getWidth() * actual.getHeight();
+
+        int mismatched = 0;
+        for(int y = 0; y < actual.getHeight(); y++)
+        {
+            for(int x = 0; x < actual.getWidth(); x++)
+            {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for(int shift = 0; shift < 32; shift += 8)
+                {
+                    if(Math.abs(((e >>> shift) & 0xff) - ((a >>> shift) & 0xff)) > TOLERANCE)
+                    {
+                        mismatched++;
+                        break;
+                    }
+                }
+            }
+        }
+        return mismatched;
+    }
+}
@@ -0,0 +1,109 @@
+package com.jdrago.m3.bench;
+
+// A desktop stand-in for the parts of android.opengl.Matrix the renderer used to call once per
+// quad. The math (column-major, same argument order) and the temp-buffer-and-copy behaviour of
+// rotateM follow the Android implementation, so timing this is a fair proxy for the old path.
+class LegacyMatrix
+{
+    static private final float[] sTemp = new float[32];
+
+    private LegacyMatrix()
+    {
+    }
+
+    static void setIdentityM(float[] m, int offset)
+    {
+        for(int i = 0; i < 16; i++)
+            m[offset + i] = 0;
+        for(int i = 0; i < 16; i += 5)
+            m[offset + i] = 1.0f;
+    }
+
+    static void translateM(float[] m, int offset, float x, float y, float z)
+    {
+        for(int i = 0; i < 4; i++)
+        {
+            int mi = offset + i;
+            m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+        }
+    }
+
+    static void scaleM(float[] m, int offset, float x, float y, float z)
+    {
+        for(int i = 0; i < 4; i++)
+        {
+            int mi = offset + i;
+            m[mi] *= x;
+            m[4 + mi] *= y;
+            m[8 + mi] *= z;
+        }
+    }
+
+    static void rotateM(float[] m, int offset, float a, float x, float y, float z)
+    {
+        synchronized(sTemp)
+        {
+            setRotateM(sTemp, 0, a, x, y, z);
+            multiplyMM(sTemp, 16, m, offset, sTemp, 0);
+            System.arraycopy(sTemp, 16, m, offset, 16);
+        }
+    }
+
+    // Only the axis-aligned cases the renderer ever hit are special cased, like Android does
+    static void setRotateM(float[] rm, int offset, float a, float x, float y, float z)
+    {
+        rm[offset + 3] = 0;
+        rm[offset + 7] = 0;
+        rm[offset + 11] = 0;
+        rm[offset + 12] = 0;
+        rm[offset + 13] = 0;
+        rm[offset + 14] = 0;
+        rm[offset + 15] = 1;
+        a *= (float)(Math.PI / 180.0f);
+        float s = (float)Math.sin(a);
+        float c = (float)Math.cos(a);
+        if((x != 0) || (y != 0) || (z != 1))
+            throw new IllegalArgumentException("LegacyMatrix only rotates around Z");
+        rm[offset + 0] = c;
+        rm[offset + 5] = c;
+        rm[offset + 1] = s;
+        rm[offset + 4] = -s;
+        rm[offset + 2] = 0;
+        rm[offset + 6] = 0;
+        rm[offset + 8] = 0;
+        rm[offset + 9] = 0;
+        rm[offset + 10] = 1;
+    }
+
+    // Like the native version, each rhs column is read before that result column is written, so
+    // result may alias rhs (the renderer relied on this for its projection multiply)
+    static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset)
+    {
+        for(int col = 0; col < 4; col++)
+        {
+            int ci = col * 4;
+            float r0 = rhs[rhsOffset + ci];
+            float r1 = rhs[rhsOffset + ci + 1];
+            float r2 = rhs[rhsOffset + ci + 2];
+            float r3 = rhs[rhsOffset + ci + 3];
+            for(int row = 0; row < 4; row++)
+            {
+                result[resultOffset + ci + row] = (lhs[lhsOffset + row] * r0)
+                                                + (lhs[lhsOffset + 4 + row] * r1)
+                                                + (lhs[lhsOffset + 8 + row] * r2)
+                                                + (lhs[lhsOffset + 12 + row] * r3);
+            }
+        }
+    }
+
+    static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset)
+    {
+        for(int row = 0; row < 4; row++)
+        {
+            float sum = 0;
+            for(int k = 0; k < 4; k++)
+                sum += lhs[lhsOffset + (k * 4) + row] * rhs[rhsOffset + k];
+            result[resultOffset + row] = sum;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.jdrago.m3.bench;
+
+import com.jdrago.m3.QuadTransform;
+
+import java.util.Random;
+
+// Compares the per-quad CPU cost of the old placement path (a fresh vertex array plus a 4x4
+// model/view/projection build through android.opengl.Matrix) against QuadTransform writing the
+// four corners into a reused array. Run with:
+//
+//     ant -f bench/build.xml quad-transform
+public class QuadTransformBenchmark
+{
+    static private final int QUAD_COUNT = 256;
+    static private final int WARMUP_ROUNDS = 5;
+    static private final int MEASURED_ROUNDS = 10;
+    static private final long ROUND_NANOS = 200L * 1000 * 1000;
+
+    // dstX, dstY, dstW, dstH, rot, anchorX, anchorY
+    static private final int QUAD_SIZE = 7;
+
+    private float[] quads_ = new float[QUAD_COUNT * QUAD_SIZE];
+    private float[] viewMatrix_ = new float[16];
+    private float[] projMatrix_ = new float[16];
+    private float[] modelMatrix_ = new float[16];
+    private float[] viewProjMatrix_ = new float[16];
+    private float[] corners_ = new float[8];
+    private float sink_;
+
+    public static void main(String[] args)
+    {
+        new QuadTransformBenchmark().run();
+    }
+
+    private QuadTransformBenchmark()
+    {
+        // Roughly what a frame looks like: a board of gems (centered, mostly unrotated), a few
+        // spinning shatter pieces and a line of HUD text (top-left anchored).
+        Random random = new Random(1);
+        for(int i = 0; i < QUAD_COUNT; i++)
+        {
+            int qi = i * QUAD_SIZE;
+            boolean text = (i % 4) == 3;
+            boolean spinning = (i % 16) == 5;
+            quads_[qi + 0] = random.nextFloat() * 1080;
+            quads_[qi + 1] = random.nextFloat() * 1920;
+            quads_[qi + 2] = 40 + random.nextFloat() * 100;
+            quads_[qi + 3] = 40 + random.nextFloat() * 100;
+            quads_[qi + 4] = spinning ? (float)(random.nextFloat() * Math.PI) : 0;
+            quads_[qi + 5] = text ? 0 : 0.5f;
+            quads_[qi + 6] = text ? 0 : 0.5f;
+        }
+
+        // Same view and projection the renderer sets up
+        LegacyMatrix.setIdentityM(viewMatrix_, 0);
+        LegacyMatrix.translateM(viewMatrix_, 0, 0, 0, -10);
+        LegacyMatrix.setIdentityM(projMatrix_, 0);
+        projMatrix_[0] = 2.0f / 1080;
+        projMatrix_[5] = -2.0f / 1920;
+        projMatrix_[10] = -2.0f / 20;
+        projMatrix_[12] = -1;
+        projMatrix_[13] = 1;
+        projMatrix_[14] = -1;
+    }
+
+    private void run()
+    {
+        System.out.println("Quad transform benchmark: " + QUAD_COUNT + " quads per pass");
+        System.out.println("Max corner error (legacy vs QuadTransform): " + maxCornerError());
+
+        for(int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            measureLegacy();
+            measureQuadTransform();
+        }
+
+        double legacyBest = Double.MAX_VALUE;
+        double directBest = Double.MAX_VALUE;
+        for(int i = 0; i < MEASURED_ROUNDS; i++)
+        {
+            legacyBest = Math.min(legacyBest, measureLegacy());
+            directBest = Math.min(directBest, measureQuadTransform());
+        }
+
+        System.out.println(String.format("legacy (Matrix 4x4, allocating): %8.2f ns/quad", legacyBest));
+        System.out.println(String.format("QuadTransform (2D affine):       %8.2f ns/quad", directBest));
+        System.out.println(String.format("speedup:                         %8.2fx", legacyBest / directBest));
+        System.out.println("(ignore) " + sink_);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Timed loops. Each returns the average ns per quad over one round.
+
+    private double measureLegacy()
+    {
+        long quads = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do
+        {
+            for(int i = 0; i < QUAD_COUNT; i++)
+            {
+                legacyQuad(i * QUAD_SIZE);
+            }
+            quads += QUAD_COUNT;
+            elapsed = System.nanoTime() - start;
+        }
+        while(elapsed < ROUND_NANOS);
+        return (double)elapsed / quads;
+    }
+
+    private double measureQuadTransform()
+    {
+        long quads = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do
+        {
+            for(int i = 0; i < QUAD_COUNT; i++)
+            {
+                int qi = i * QUAD_SIZE;
+                QuadTransform.transform(quads_[qi + 0], quads_[qi + 1], quads_[qi + 2], quads_[qi + 3],
+                                        quads_[qi + 4], quads_[qi + 5], quads_[qi + 6], corners_, 0, 2);
+                sink_ += corners_[0] + corners_[7];
+            }
+            quads += QUAD_COUNT;
+            elapsed = System.nanoTime() - start;
+        }
+        while(elapsed < ROUND_NANOS);
+        return (double)elapsed / quads;
+    }
+
+    // The work the renderer used to do per quad, minus the GL calls
+    private void legacyQuad(int qi)
+    {
+        float[] vertData = {
+            0, 0, 0, 0, 0,
+            1, 0, 0, 1, 0,
+            1, 1, 0, 1, 1,
+            0, 1, 0, 0, 1};
+
+        buildModelMatrix(qi);
+        LegacyMatrix.multiplyMM(viewProjMatrix_, 0, viewMatrix_, 0, modelMatrix_, 0);
+        LegacyMatrix.multiplyMM(viewProjMatrix_, 0, projMatrix_, 0, viewProjMatrix_, 0);
+        sink_ += viewProjMatrix_[12] + vertData[3];
+    }
+
+    private void buildModelMatrix(int qi)
+    {
+        float anchorOffsetX = -1 * quads_[qi + 5] * quads_[qi + 2];
+        float anchorOffsetY = -1 * quads_[qi + 6] * quads_[qi + 3];
+        float degrees = (float)(quads_[qi + 4] * 180.0f / Math.PI);
+
+        LegacyMatrix.setIdentityM(modelMatrix_, 0);
+        LegacyMatrix.translateM(modelMatrix_, 0, quads_[qi + 0], quads_[qi + 1], 0);
+        LegacyMatrix.rotateM(modelMatrix_, 0, degrees, 0, 0, 1);
+        LegacyMatrix.translateM(modelMatrix_, 0, anchorOffsetX, anchorOffsetY, 0);
+        LegacyMatrix.scaleM(modelMatrix_, 0, quads_[qi + 2], quads_[qi + 3], 0);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Correctness check: both paths must put the corners in the same place
+
+    private float maxCornerError()
+    {
+        float[] unitCorners = { 0, 0, 1, 0, 1, 1, 0, 1 };
+        float[] corner = new float[4];
+        float[] transformed = new float[4];
+        float maxError = 0;
+        for(int i = 0; i < QUAD_COUNT; i++)
+        {
+            int qi = i * QUAD_SIZE;
+            buildModelMatrix(qi);
+            QuadTransform.transform(quads_[qi + 0], quads_[qi + 1], quads_[qi + 2], quads_[qi + 3],
+                                    quads_[qi + 4], quads_[qi + 5], quads_[qi + 6], corners_, 0, 2);
+            for(int c = 0; c < 4; c++)
+            {
+                corner[0] = unitCorners[c * 2];
+                corner[1] = unitCorners[c * 2 + 1];
+                corner[2] = 0;
+                corner[3] = 1;
+                LegacyMatrix.multiplyMV(transformed, 0, modelMatrix_, 0, corner, 0);
+                maxError = Math.max(maxError, Math.abs(transformed[0] - corners_[c * 2]));
+                maxError = Math.max(maxError, Math.abs(transformed[1] - corners_[c * 2 + 1]));
+            }
+        }
+        return maxError;
+    }
+}
@@ -0,0 +1,77 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.CommandBuffer;
+import com.jdrago.m3.SpriteBatch;
+import com.jdrago.m3.Texture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The whole per-frame CPU path between the script's render() and GL: SpriteBatch decoding the
+// command buffer jsRender filled into vertices, batched by texture. GL is replaced by a sink that
+// only hands each batch to the Blackhole, so what's measured is decode + batching alone.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDecodeBenchmark
+{
+    // A board frame is ~200 quads; 2048 is a full SpriteBatch
+    @Param({ "200", "2048" })
+    public int quadCount;
+
+    @Param({ "0.05", "0.5" })
+    public double pageSpread;
+
+    private CommandBuffer frame_;
+    private Texture[] textures_;
+    private SpriteBatch spriteBatch_;
+    private NoopSink sink_;
+
+    @Setup
+    public void setup(Blackhole blackhole)
+    {
+        frame_ = Frames.frame(quadCount, pageSpread, 1);
+        textures_ = Frames.textures();
+        spriteBatch_ = new SpriteBatch();
+        sink_ = new NoopSink(blackhole);
+    }
+
+    @Benchmark
+    public int decode()
+    {
+        return spriteBatch_.submit(frame_, textures_, sink_);
+    }
+
+    // Stands in for M3Renderer.drawQuads
+    static final class NoopSink implements SpriteBatch.Sink
+    {
+        private Blackhole blackhole_;
+
+        NoopSink(Blackhole blackhole)
+        {
+            blackhole_ = blackhole;
+        }
+
+        public void drawQuads(Texture texture, float[] vertData, int quadCount)
+        {
+            blackhole_.consume(texture);
+            blackhole_.consume(vertData);
+            blackhole_.consume(quadCount);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.CommandBuffer;
+import com.jdrago.m3.Texture;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+// Synthetic but game-shaped command streams for the benchmarks: a board of gems over a board of
+// tiles, a few spinning shatter pieces and lines of HUD text, spread over the atlas pages the way
+// 'cake atlas' lays them out. Seeded, so every run and every fork sees the same frame.
+final class Frames
+{
+    static final int ATLAS_PAGES = 2;
+    static final int ATLAS_SIZE = 2048;
+
+    private Frames()
+    {
+    }
+
+    static Texture[] textures()
+    {
+        Texture[] textures = new Texture[ATLAS_PAGES];
+        for(int i = 0; i < ATLAS_PAGES; i++)
+        {
+            textures[i] = new Texture();
+            textures[i].id = i + 1;
+            textures[i].width = ATLAS_SIZE;
+            textures[i].height = ATLAS_SIZE;
+        }
+        return textures;
+    }
+
+    // pageSpread: chance that a quad lands on a different page than its predecessor, which is what
+    // breaks batches. Roughly 0.05 for the real game.
+    static CommandBuffer frame(int quadCount, double pageSpread, long seed)
+    {
+        Random random = new Random(seed);
+        CommandBuffer buffer = new CommandBuffer(quadCount);
+        FloatBuffer commands = buffer.floats();
+        int page = 0;
+        for(int i = 0; i < quadCount; i++)
+        {
+            if(random.nextDouble() < pageSpread)
+                page = random.nextInt(ATLAS_PAGES);
+            boolean text = (i % 4) == 3;
+            boolean spinning = (i % 16) == 5;
+            int qi = i * CommandBuffer.COMMAND_SIZE;
+            commands.put(qi + 0, page);
+            commands.put(qi + 1, random.nextInt(ATLAS_SIZE - 80));
+            commands.put(qi + 2, random.nextInt(ATLAS_SIZE - 80));
+            commands.put(qi + 3, text ? 24 : 80);
+            commands.put(qi + 4, text ? 32 : 80);
+            commands.put(qi + 5, random.nextFloat() * 1080);
+            commands.put(qi + 6, random.nextFloat() * 1920);
+            commands.put(qi + 7, text ? 24 : 40 + random.nextFloat() * 100);
+            commands.put(qi + 8, text ? 32 : 40 + random.nextFloat() * 100);
+            commands.put(qi + 9, spinning ? (float)(random.nextFloat() * Math.PI) : 0);
+            commands.put(qi + 10, text ? 0 : 0.5f);
+            commands.put(qi + 11, text ? 0 : 0.5f);
+            commands.put(qi + 12, 1);
+            commands.put(qi + 13, 1);
+            commands.put(qi + 14, 1);
+            commands.put(qi + 15, spinning ? random.nextFloat() : 1);
+        }
+        buffer.setQuadCount(quadCount);
+        return buffer;
+    }
+}
@@ -0,0 +1,142 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.InputRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Touch input from the UI thread to the sim thread: InputRing against the ConcurrentLinkedQueue
+// of Touch objects it replaced.
+//
+// * frame*: one frame's worth of drag (EVENTS_PER_FRAME moves) offered and then drained on one
+//   thread; the cost the sim thread and UI thread pay between them per frame.
+// * ring/queue groups: a producer and a consumer thread hammering it concurrently, for raw
+//   throughput under contention.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputRingBenchmark
+{
+    static private final int EVENTS_PER_FRAME = 32;
+    static private final int RING_CAPACITY = 256;
+
+    // What the old path allocated per event
+    static final class Touch
+    {
+        final int type;
+        final double x;
+        final double y;
+
+        Touch(int type, double x, double y)
+        {
+            this.type = type;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Shared
+    {
+        InputRing ring;
+        ConcurrentLinkedQueue<Touch> queue;
+
+        @Setup
+        public void setup()
+        {
+            ring = new InputRing(RING_CAPACITY);
+            queue = new ConcurrentLinkedQueue<Touch>();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Local
+    {
+        InputRing ring;
+        ConcurrentLinkedQueue<Touch> queue;
+        long time;
+
+        @Setup
+        public void setup()
+        {
+            ring = new InputRing(RING_CAPACITY);
+            queue = new ConcurrentLinkedQueue<Touch>();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // One frame of drag, single thread
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_FRAME)
+    public int frameRing(Local local)
+    {
+        for(int i = 0; i < EVENTS_PER_FRAME; i++)
+            local.ring.offer(InputRing.MOVE, i, i, local.time++);
+        return local.ring.drain();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_FRAME)
+    public double frameQueue(Local local)
+    {
+        for(int i = 0; i < EVENTS_PER_FRAME; i++)
+            local.queue.offer(new Touch(InputRing.MOVE, i, i));
+        double sum = 0;
+        Touch touch;
+        while((touch = local.queue.poll()) != null)
+            sum += touch.x;
+        return sum;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Producer and consumer threads
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public boolean ringOffer(Shared shared)
+    {
+        return shared.ring.offer(InputRing.MOVE, 1, 2, 3);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int ringDrain(Shared shared)
+    {
+        return shared.ring.drain();
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean queueOffer(Shared shared)
+    {
+        return shared.queue.offer(new Touch(InputRing.MOVE, 1, 2));
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public Touch queuePoll(Shared shared)
+    {
+        return shared.queue.poll();
+    }
+}
@@ -0,0 +1,72 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.rules.Board;
+import com.jdrago.m3.rules.Slides;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// rules.Board on its own, to keep GameSimulator's throughput honest:
+//
+// * legalSlides: every slide checked on one board, what each random/greedy decision costs
+// * scores: Grid.scoreGrid's work, what RulesBridge.score() does per drag preview
+// * randomGame: a whole seeded game with the random policy; ops/s here is games/sec per core
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark
+{
+    private Board board_ = new Board(1);
+    private Board game_ = new Board(0);
+    private int[] legal_ = new int[Slides.COUNT];
+    private int[] scores_ = new int[Board.CELLS];
+    private long seed_;
+
+    @Setup
+    public void setup()
+    {
+        board_.newGame();
+    }
+
+    @Benchmark
+    public int legalSlides()
+    {
+        return Slides.legal(board_, legal_);
+    }
+
+    @Benchmark
+    public boolean scores()
+    {
+        return board_.scores(scores_);
+    }
+
+    @Benchmark
+    public int randomGame()
+    {
+        game_.setSeed(++seed_);
+        game_.newGame();
+        long state = seed_;
+        while(game_.turns() > 0)
+        {
+            int count = Slides.legal(game_, legal_);
+            if(count == 0)
+                break;
+            state = (state * 6364136223846793005L) + 1442695040888963407L;
+            Slides.play(game_, legal_[(int)(((state >>> 32) * count) >>> 32)]);
+        }
+        return game_.progress();
+    }
+}
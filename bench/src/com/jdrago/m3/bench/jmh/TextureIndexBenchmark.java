@@ -0,0 +1,131 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.CommandBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+// The texture index half of decode, in isolation:
+//
+// * clampBranch is what SpriteBatch.submit does per quad today; clampMinMax is the branch-free
+//   alternative.
+// * sortByPage is a stable counting sort of quad order by atlas page, which is what batching
+//   across page switches would cost before decode (draw order within a page is kept; only
+//   worth it where quads on different pages don't overlap). batchesUnsorted/batchesSorted
+//   count the texture switches each order produces, to weigh against it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureIndexBenchmark
+{
+    @Param({ "200", "2048" })
+    public int quadCount;
+
+    @Param({ "0.05", "0.5" })
+    public double pageSpread;
+
+    private FloatBuffer commands_;
+    private int textureCount_;
+    private int[] pageCounts_;
+    private int[] order_;
+
+    @Setup
+    public void setup()
+    {
+        commands_ = Frames.frame(quadCount, pageSpread, 1).floats();
+        textureCount_ = Frames.ATLAS_PAGES;
+        pageCounts_ = new int[textureCount_ + 1];
+        order_ = new int[quadCount];
+    }
+
+    @Benchmark
+    public int clampBranch()
+    {
+        int sum = 0;
+        for(int i = 0, qi = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+        {
+            int textureIndex = (int)commands_.get(qi);
+            if(textureIndex < 0)
+                textureIndex = 0;
+            if(textureIndex >= textureCount_)
+                textureIndex = textureCount_ - 1;
+            sum += textureIndex;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int clampMinMax()
+    {
+        int sum = 0;
+        int last = textureCount_ - 1;
+        for(int i = 0, qi = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+            sum += Math.max(0, Math.min((int)commands_.get(qi), last));
+        return sum;
+    }
+
+    @Benchmark
+    public int[] sortByPage()
+    {
+        int last = textureCount_ - 1;
+        for(int p = 0; p <= textureCount_; p++)
+            pageCounts_[p] = 0;
+        for(int i = 0, qi = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+            pageCounts_[Math.max(0, Math.min((int)commands_.get(qi), last)) + 1]++;
+        for(int p = 1; p <= textureCount_; p++)
+            pageCounts_[p] += pageCounts_[p - 1];
+        for(int i = 0, qi = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+            order_[pageCounts_[Math.max(0, Math.min((int)commands_.get(qi), last))]++] = i;
+        return order_;
+    }
+
+    @Benchmark
+    public int batchesUnsorted()
+    {
+        int batches = 0;
+        int current = -1;
+        for(int i = 0, qi = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+        {
+            int page = (int)commands_.get(qi);
+            if(page != current)
+            {
+                batches++;
+                current = page;
+            }
+        }
+        return batches;
+    }
+
+    @Benchmark
+    public int batchesSorted()
+    {
+        int[] order = sortByPage();
+        int batches = 0;
+        int current = -1;
+        for(int i = 0; i < quadCount; i++)
+        {
+            int page = (int)commands_.get(order[i] * CommandBuffer.COMMAND_SIZE);
+            if(page != current)
+            {
+                batches++;
+                current = page;
+            }
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,98 @@
+package com.jdrago.m3.bench.jmh;
+
+import com.jdrago.m3.QuadTransform;
+import com.jdrago.m3.SpriteBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-quad cost of QuadTransform placing the four corners, on its own (transform) and with the
+// UV/color attributes SpriteBatch writes alongside it (vertices), over the same mix of quads
+// QuadTransformBenchmark uses: mostly centered and unrotated, some spinning, some top-left text.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexGenerationBenchmark
+{
+    static private final int QUAD_COUNT = 256;
+
+    // dstX, dstY, dstW, dstH, rot, anchorX, anchorY
+    static private final int QUAD_SIZE = 7;
+
+    private float[] quads_ = new float[QUAD_COUNT * QUAD_SIZE];
+    private float[] vertData_ = new float[QUAD_COUNT * SpriteBatch.FLOATS_PER_QUAD];
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(1);
+        for(int i = 0; i < QUAD_COUNT; i++)
+        {
+            int qi = i * QUAD_SIZE;
+            boolean text = (i % 4) == 3;
+            boolean spinning = (i % 16) == 5;
+            quads_[qi + 0] = random.nextFloat() * 1080;
+            quads_[qi + 1] = random.nextFloat() * 1920;
+            quads_[qi + 2] = 40 + random.nextFloat() * 100;
+            quads_[qi + 3] = 40 + random.nextFloat() * 100;
+            quads_[qi + 4] = spinning ? (float)(random.nextFloat() * Math.PI) : 0;
+            quads_[qi + 5] = text ? 0 : 0.5f;
+            quads_[qi + 6] = text ? 0 : 0.5f;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUAD_COUNT)
+    public float[] transform()
+    {
+        for(int i = 0; i < QUAD_COUNT; i++)
+        {
+            int qi = i * QUAD_SIZE;
+            QuadTransform.transform(quads_[qi + 0], quads_[qi + 1], quads_[qi + 2], quads_[qi + 3],
+                                    quads_[qi + 4], quads_[qi + 5], quads_[qi + 6],
+                                    vertData_, i * SpriteBatch.FLOATS_PER_QUAD + SpriteBatch.POS_OFFSET, SpriteBatch.FLOATS_PER_VERTEX);
+        }
+        return vertData_;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUAD_COUNT)
+    public float[] vertices()
+    {
+        for(int i = 0; i < QUAD_COUNT; i++)
+        {
+            int qi = i * QUAD_SIZE;
+            int vi = i * SpriteBatch.FLOATS_PER_QUAD;
+            QuadTransform.transform(quads_[qi + 0], quads_[qi + 1], quads_[qi + 2], quads_[qi + 3],
+                                    quads_[qi + 4], quads_[qi + 5], quads_[qi + 6],
+                                    vertData_, vi + SpriteBatch.POS_OFFSET, SpriteBatch.FLOATS_PER_VERTEX);
+            float u = quads_[qi + 0] / 2048;
+            float v = quads_[qi + 1] / 2048;
+            for(int corner = 0; corner < 4; corner++, vi += SpriteBatch.FLOATS_PER_VERTEX)
+            {
+                vertData_[vi + SpriteBatch.UV_OFFSET] = u;
+                vertData_[vi + SpriteBatch.UV_OFFSET + 1] = v;
+                vertData_[vi + SpriteBatch.COLOR_OFFSET] = 1;
+                vertData_[vi + SpriteBatch.COLOR_OFFSET + 1] = 1;
+                vertData_[vi + SpriteBatch.COLOR_OFFSET + 2] = 1;
+                vertData_[vi + SpriteBatch.COLOR_OFFSET + 3] = 1;
+            }
+        }
+        return vertData_;
+    }
+}
@@ -0,0 +1,289 @@
+package com.jdrago.m3;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+// Everything the app loads at startup (the script, the atlas manifest and the atlas pages), in one
+// file built by 'cake build' and memory-mapped read-only. Entries are handed out as ByteBuffer
+// slices of the mapping, so KTX mip levels go to GL and PNGs to the decoder straight from the
+// page cache, with no copy on the Java heap; only the script is decoded, once, because V8 wants
+// a String.
+//
+// The layout (little-endian, version 1):
+//
+//   "M3PK"            magic
+//   u32               version
+//   u32               entry count
+//   per entry:        u16 name length, UTF-8 name, u32 offset, u32 length
+//   payloads          each starting on a 16 byte boundary
+//
+// The pack is mapped straight out of the APK: custom_rules.xml tells aapt to store .m3p files
+// uncompressed. If a build ever compresses it anyway, it is extracted to filesDir once per
+// install/update and that copy is mapped instead, with a warning, since that costs a full copy.
+// The mapping is read-only and never moves, so entries can be used from any thread.
+public class AssetPack
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static public final String SCRIPT = "script.js";
+    static public final String ATLAS_MANIFEST = "atlas.json";
+
+    static private final String TAG = "M3";
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+    static private final byte[] MAGIC = { 'M', '3', 'P', 'K' };
+    static private final int VERSION = 1;
+    static private final int HEADER_SIZE = 12;
+    static private final String EXTRACT_DIR = "pack";
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private MappedByteBuffer mapped_;
+    private HashMap<String, int[]> entries_ = new HashMap<String, int[]>(); // name -> { offset, length }
+    private boolean extracted_;
+
+    // --------------------------------------------------------------------------------------------
+    // Opening
+
+    static public AssetPack open(Context context, int res)
+    {
+        long start = System.nanoTime();
+        AssetPack pack = new AssetPack();
+        try
+        {
+            pack.map(context, res);
+            pack.readIndex();
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("Failed to open asset pack", e);
+        }
+        Log.d(TAG, "Asset pack: " + pack.entries_.size() + " entries, " + (pack.mapped_.capacity() / 1024) + " KB mapped "
+              + (pack.extracted_ ? "from the extracted copy" : "from the APK") + " in "
+              + ((System.nanoTime() - start) / 1000) + " us");
+        return pack;
+    }
+
+    private void map(Context context, int res) throws IOException
+    {
+        AssetFileDescriptor afd = null;
+        try
+        {
+            afd = context.getResources().openRawResourceFd(res);
+        }
+        catch(Resources.NotFoundException e)
+        {
+            // Compressed in the APK; there is no file descriptor to map
+        }
+
+        if(afd != null)
+        {
+            // The mapping outlives the descriptor
+            FileInputStream in = new FileInputStream(afd.getFileDescriptor());
+            try
+            {
+                mapped_ = in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            }
+            finally
+            {
+                afd.close();
+            }
+            return;
+        }
+
+        File file = extract(context, res);
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            mapped_ = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally
+        {
+            in.close();
+        }
+        extracted_ = true;
+    }
+
+    // The copy is named for the APK's last update time, so an update brings a fresh one and stale
+    // copies are deleted. Written to a temp file and renamed, so a kill mid-copy is never mapped.
+    static private File extract(Context context, int res) throws IOException
+    {
+        long updated;
+        try
+        {
+            updated = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        }
+        catch(PackageManager.NameNotFoundException e)
+        {
+            throw new IOException("Can't find our own package", e);
+        }
+
+        File dir = new File(context.getFilesDir(), EXTRACT_DIR);
+        File file = new File(dir, "assets-" + updated + ".m3p");
+        if(file.isFile())
+            return file;
+
+        if(!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can't create " + dir);
+        File[] stale = dir.listFiles();
+        if(stale != null)
+        {
+            for(File old : stale)
+                old.delete();
+        }
+
+        long start = System.nanoTime();
+        File temp = new File(dir, file.getName() + ".tmp");
+        InputStream in = context.getResources().openRawResource(res);
+        FileOutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(temp);
+            byte[] chunk = new byte[64 * 1024];
+            int len;
+            while((len = in.read(chunk)) != -1)
+                out.write(chunk, 0, len);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if(!temp.renameTo(file))
+                throw new IOException("Can't rename " + temp + " into place");
+        }
+        finally
+        {
+            in.close();
+            if(out != null)
+            {
+                try
+                {
+                    out.close();
+                } catch (IOException e)
+                {
+                    // Ignore.
+                }
+            }
+            temp.delete();
+        }
+        Log.w(TAG, "Asset pack is compressed in the APK (check aapt's nocompress rule), extracted " + (file.length() / 1024) + " KB in "
+              + ((System.nanoTime() - start) / 1000000) + " ms");
+        return file;
+    }
+
+    private void readIndex() throws IOException
+    {
+        ByteBuffer pack = mapped_.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int size = pack.capacity();
+        if(size < HEADER_SIZE)
+            throw new IOException("Asset pack is truncated (" + size + " bytes)");
+        for(int i = 0; i < MAGIC.length; i++)
+        {
+            if(pack.get(i) != MAGIC[i])
+                throw new IOException("Not an asset pack");
+        }
+        int version = pack.getInt(4);
+        if(version != VERSION)
+            throw new IOException("Unknown asset pack version " + version);
+
+        int count = pack.getInt(8);
+        pack.position(HEADER_SIZE);
+        try
+        {
+            for(int i = 0; i < count; i++)
+            {
+                byte[] name = new byte[pack.getShort() & 0xffff];
+                pack.get(name);
+                int offset = pack.getInt();
+                int length = pack.getInt();
+                if((offset < 0) || (length < 0) || (offset > size - length))
+                    throw new IOException("Asset pack entry " + new String(name, UTF8) + " is out of bounds");
+                entries_.put(new String(name, UTF8), new int[] { offset, length });
+            }
+        }
+        catch(RuntimeException e)
+        {
+            throw new IOException("Asset pack index is truncated", e);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Entries
+
+    public boolean has(String name)
+    {
+        return entries_.containsKey(name);
+    }
+
+    // A read-only view of the entry, positioned at 0 with its own byte order and limit, or null if
+    // the pack doesn't have it
+    public ByteBuffer entry(String name)
+    {
+        int[] range = entries_.get(name);
+        if(range == null)
+            return null;
+        ByteBuffer view = mapped_.duplicate();
+        view.limit(range[0] + range[1]);
+        view.position(range[0]);
+        return view.slice();
+    }
+
+    public String string(String name)
+    {
+        ByteBuffer data = entry(name);
+        if(data == null)
+            throw new RuntimeException("Asset pack has no " + name);
+        try
+        {
+            CharBuffer chars = UTF8.newDecoder().decode(data);
+            return chars.toString();
+        }
+        catch(CharacterCodingException e)
+        {
+            throw new RuntimeException(name + " in the asset pack isn't UTF-8", e);
+        }
+    }
+
+    public InputStream stream(String name)
+    {
+        final ByteBuffer data = entry(name);
+        if(data == null)
+            return null;
+        return new InputStream() {
+            @Override
+            public int read() {
+                return data.hasRemaining() ? (data.get() & 0xff) : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if(!data.hasRemaining())
+                    return -1;
+                len = Math.min(len, data.remaining());
+                data.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return data.remaining();
+            }
+        };
+    }
+}
@@ -0,0 +1,194 @@
+package com.jdrago.m3;
+
+import android.opengl.GLES20;
+import android.os.Process;
+import android.util.Log;
+
+import com.jdrago.m3.egl.EGLManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// Decodes and uploads textures on a worker thread, on a GL context shared with the renderer's, so
+// neither startup nor surface re-creation waits on asset size. The renderer draws with
+// placeholders (from its GLBackend) and calls poll() once per frame to swap in whatever has become resident.
+//
+// GLES2 has no sync objects, so the worker glFinish()es after each texture before publishing it;
+// that is the portable fence, and it only ever stalls the worker. If the driver won't give us a
+// shared context at all, poll() loads everything on the render thread instead, as before.
+public class AsyncTextureLoader
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final String TAG = "M3";
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private EGLManager eglManager_;
+    private AssetPack pack_;
+    private String[] names_;
+    private volatile AtomicReferenceArray<Texture> resident_;
+    private AtomicInteger remaining_ = new AtomicInteger();
+    private volatile boolean cancelled_;
+    private volatile boolean sharedContextFailed_;
+    private Thread thread_;
+    private long startTime_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public AsyncTextureLoader(EGLManager eglManager, AssetPack pack)
+    {
+        eglManager_ = eglManager;
+        pack_ = pack;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Render thread API
+
+    // Kicks off loading names on the worker. Call from onSurfaceCreated, with the rendering
+    // context current.
+    public void start(String[] names)
+    {
+        cancel();
+
+        names_ = names;
+        resident_ = new AtomicReferenceArray<Texture>(names.length);
+        remaining_.set(names.length);
+        cancelled_ = false;
+        sharedContextFailed_ = false;
+        startTime_ = System.currentTimeMillis();
+
+        thread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                loadAll();
+            }
+        }, "M3 texture loader");
+        thread_.start();
+    }
+
+    // Copies every texture that has become resident into textures (indexed like the names given
+    // to start()), deleting the placeholder it replaces through backend. Returns true if anything
+    // changed.
+    public boolean poll(Texture[] textures, GLBackend backend)
+    {
+        AtomicReferenceArray<Texture> resident = resident_;
+        if(resident == null)
+            return false;
+
+        if(sharedContextFailed_ && (remaining_.get() > 0))
+        {
+            // The worker gave up without touching GL; do the rest here on the render thread
+            TextureLoader loader = new TextureLoader(pack_);
+            for(int i = 0; i < names_.length; i++)
+            {
+                if(resident.get(i) == null)
+                {
+                    resident.set(i, loader.load(names_[i]));
+                    remaining_.decrementAndGet();
+                }
+            }
+        }
+
+        boolean changed = false;
+        for(int i = 0; i < textures.length; i++)
+        {
+            Texture texture = resident.get(i);
+            if((texture != null) && (textures[i] != texture))
+            {
+                if(textures[i] != null)
+                    backend.deleteTexture(textures[i]);
+                textures[i] = texture;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // True while any texture is still on its placeholder
+    public boolean pending()
+    {
+        return remaining_.get() > 0;
+    }
+
+    // Stops the worker and waits for it to let go of its context. Call from onSurfaceDestroyed;
+    // the textures themselves die with the context.
+    public void cancel()
+    {
+        cancelled_ = true;
+        if(thread_ != null)
+        {
+            try
+            {
+                thread_.join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            thread_ = null;
+        }
+        resident_ = null;
+        remaining_.set(0);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Worker
+
+    private void loadAll()
+    {
+        EGLContext context = eglManager_.createSharedContext();
+        EGLSurface surface = EGL10.EGL_NO_SURFACE;
+        if(context != EGL10.EGL_NO_CONTEXT)
+        {
+            surface = eglManager_.createSharedSurface();
+            if(!eglManager_.bindShared(context, surface))
+            {
+                // No pbuffer support with this config; try surfaceless
+                if(surface != EGL10.EGL_NO_SURFACE)
+                    eglManager_.destroyShared(EGL10.EGL_NO_CONTEXT, surface);
+                surface = EGL10.EGL_NO_SURFACE;
+                if(!eglManager_.bindShared(context, surface))
+                {
+                    eglManager_.destroyShared(context, surface);
+                    context = EGL10.EGL_NO_CONTEXT;
+                }
+            }
+        }
+        if(context == EGL10.EGL_NO_CONTEXT)
+        {
+            Log.w(TAG, "No shared GL context available, loading textures on the render thread");
+            sharedContextFailed_ = true;
+            return;
+        }
+
+        try
+        {
+            TextureLoader loader = new TextureLoader(pack_);
+            for(int i = 0; i < names_.length; i++)
+            {
+                if(cancelled_)
+                    return;
+
+                Texture texture = loader.load(names_[i]);
+                GLES20.glFinish(); // fence: the upload must be complete before the render thread samples it
+                resident_.set(i, texture);
+                remaining_.decrementAndGet();
+                Log.d(TAG, "Texture " + names_[i] + " resident after " + (System.currentTimeMillis() - startTime_) + " ms");
+            }
+            Log.d(TAG, "Loaded " + names_.length + " texture(s) in the background, " + (loader.totalBytes() / 1024) + " KB of texture memory");
+        }
+        finally
+        {
+            eglManager_.destroyShared(context, surface);
+        }
+    }
+}
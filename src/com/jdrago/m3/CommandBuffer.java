@@ -0,0 +1,139 @@
+package com.jdrago.m3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+// A frame's worth of render commands, stored in a direct buffer that the script writes into
+// through a Float32Array (see Game.setCommandBuffer). Java reads the commands in place, so there
+// is no per-frame array handle, no copy into the Java heap and no double to float conversion.
+public class CommandBuffer
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    // Command layout, 16 floats per quad:
+    //  0: texture ID
+    //  1: srcX
+    //  2: srcY
+    //  3: srcW
+    //  4: srcH
+    //  5: dstX
+    //  6: dstY
+    //  7: dstW
+    //  8: dstH
+    //  9: rot
+    // 10: anchorX
+    // 11: anchorY
+    // 12: red
+    // 13: green
+    // 14: blue
+    // 15: alpha
+    static public final int COMMAND_SIZE = 16;
+    static public final int COMMAND_SIZE_BYTES = COMMAND_SIZE * 4;
+
+    // 64-bit FNV-1a
+    static private final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static private final long FNV_PRIME = 0x100000001b3L;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private ByteBuffer bytes_;
+    private FloatBuffer floats_;
+    private IntBuffer bits_;
+    private int capacity_;
+    private int quadCount_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public CommandBuffer(int capacity)
+    {
+        allocate(capacity);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Accessors
+
+    // The raw storage, in native byte order, for sharing with the script
+    public ByteBuffer bytes()
+    {
+        return bytes_;
+    }
+
+    public FloatBuffer floats()
+    {
+        return floats_;
+    }
+
+    // Capacity in quads
+    public int capacity()
+    {
+        return capacity_;
+    }
+
+    public int quadCount()
+    {
+        return quadCount_;
+    }
+
+    public void setQuadCount(int quadCount)
+    {
+        if(quadCount > capacity_)
+            quadCount = capacity_;
+        quadCount_ = quadCount;
+    }
+
+    // Grows (to the next power of two) if quadCount won't fit. The old storage is dropped, so
+    // the caller must hand the new bytes() to the script again. Returns true if it grew.
+    public boolean ensureCapacity(int quadCount)
+    {
+        if(quadCount <= capacity_)
+            return false;
+
+        int capacity = capacity_;
+        while(capacity < quadCount)
+            capacity *= 2;
+        allocate(capacity);
+        return true;
+    }
+
+    // Copies other's commands (and count) into this buffer, growing it if needed
+    public void copyFrom(CommandBuffer other)
+    {
+        ensureCapacity(other.quadCount_);
+        ByteBuffer src = other.bytes_.duplicate();
+        src.position(0);
+        src.limit(other.quadCount_ * COMMAND_SIZE_BYTES);
+        ByteBuffer dst = bytes_.duplicate();
+        dst.position(0);
+        dst.put(src);
+        quadCount_ = other.quadCount_;
+    }
+
+    // A hash of the current commands (their exact float bits, and the count). Two frames with the
+    // same fingerprint draw the same pixels, given the same textures and viewport.
+    public long fingerprint()
+    {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ quadCount_) * FNV_PRIME;
+        int count = quadCount_ * COMMAND_SIZE;
+        for(int i = 0; i < count; i++)
+            hash = (hash ^ bits_.get(i)) * FNV_PRIME;
+        return hash;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    private void allocate(int capacity)
+    {
+        capacity_ = capacity;
+        quadCount_ = 0;
+        bytes_ = ByteBuffer.allocateDirect(capacity_ * COMMAND_SIZE_BYTES).order(ByteOrder.nativeOrder());
+        floats_ = bytes_.asFloatBuffer();
+        bits_ = bytes_.asIntBuffer();
+    }
+}
@@ -0,0 +1,82 @@
+package com.jdrago.m3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free handoff of finished frames from the thread running the script to the GL thread,
+// through a pair of command buffers. At any moment the GL thread owns one of them (the frame it
+// is drawing, or last drew); the other is either free for the producer or holds a published frame
+// waiting to be picked up. A single atomic word tracks which buffer is which:
+//
+// * publish() claims the shared buffer (marking it WRITING), copies the frame in and marks it
+//   FRESH. If a previous frame was still unread it's simply overwritten; only the newest matters.
+// * acquire() swaps the FRESH buffer for the one the GL thread was holding. While the producer is
+//   mid-copy there is nothing fresh, so the GL thread just keeps its current frame.
+//
+// Neither side ever blocks or waits on the other.
+public class CommandExchange
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final int INDEX_MASK = 1;
+    static private final int FRESH = 2;
+    static private final int WRITING = 4;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private CommandBuffer[] buffers_ = new CommandBuffer[2];
+    private AtomicInteger shared_ = new AtomicInteger(1); // index of the buffer not held by the consumer, plus flags
+    private int consumer_ = 0;                            // GL thread only
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public CommandExchange(int capacity)
+    {
+        buffers_[0] = new CommandBuffer(capacity);
+        buffers_[1] = new CommandBuffer(capacity);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Producer
+
+    public void publish(CommandBuffer frame)
+    {
+        int index;
+        for(;;)
+        {
+            int state = shared_.get();
+            index = state & INDEX_MASK;
+            if(shared_.compareAndSet(state, index | WRITING))
+                break;
+        }
+        buffers_[index].copyFrom(frame);
+        shared_.set(index | FRESH);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Consumer
+
+    // Returns the newest published frame, or null if nothing was published since the last call
+    public CommandBuffer acquire()
+    {
+        for(;;)
+        {
+            int state = shared_.get();
+            if((state & FRESH) == 0)
+                return null;
+            if(shared_.compareAndSet(state, consumer_))
+            {
+                consumer_ = state & INDEX_MASK;
+                return buffers_[consumer_];
+            }
+        }
+    }
+
+    // The frame the consumer currently holds
+    public CommandBuffer current()
+    {
+        return buffers_[consumer_];
+    }
+}
@@ -0,0 +1,76 @@
+package com.jdrago.m3;
+
+import java.nio.FloatBuffer;
+
+// Blends the render commands of two consecutive simulation steps, so the script can be stepped
+// at a low fixed rate while frames go out at display rate. Quads are matched by position in the
+// stream: where both steps drew the same sprite (same texture and source rect) at the same index,
+// its placement, rotation and color are interpolated; anything else (a quad appearing, changing
+// sprite, or the count changing) snaps to the newer step. Nothing in here touches Android.
+public class CommandInterpolator
+{
+    static private final float TWO_PI = (float)(Math.PI * 2);
+
+    private CommandInterpolator()
+    {
+    }
+
+    // out = prev + (curr - prev) * alpha, per the rules above. alpha is clamped to [0, 1].
+    static public void interpolate(CommandBuffer prev, CommandBuffer curr, float alpha, CommandBuffer out)
+    {
+        if((alpha >= 1) || (prev.quadCount() != curr.quadCount()))
+        {
+            out.copyFrom(curr);
+            return;
+        }
+        if(alpha < 0)
+            alpha = 0;
+
+        int quadCount = curr.quadCount();
+        out.ensureCapacity(quadCount);
+        FloatBuffer p = prev.floats();
+        FloatBuffer c = curr.floats();
+        FloatBuffer o = out.floats();
+        int qi = 0;
+        for(int i = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+        {
+            boolean sameSprite = (p.get(qi + 0) == c.get(qi + 0))
+                              && (p.get(qi + 1) == c.get(qi + 1))
+                              && (p.get(qi + 2) == c.get(qi + 2))
+                              && (p.get(qi + 3) == c.get(qi + 3))
+                              && (p.get(qi + 4) == c.get(qi + 4));
+            if(!sameSprite)
+            {
+                for(int f = 0; f < CommandBuffer.COMMAND_SIZE; f++)
+                    o.put(qi + f, c.get(qi + f));
+                continue;
+            }
+
+            // texture, source rect and anchor come from the newer step
+            for(int f = 0; f <= 4; f++)
+                o.put(qi + f, c.get(qi + f));
+            o.put(qi + 10, c.get(qi + 10));
+            o.put(qi + 11, c.get(qi + 11));
+
+            // dstX, dstY, dstW, dstH
+            for(int f = 5; f <= 8; f++)
+                o.put(qi + f, lerp(p.get(qi + f), c.get(qi + f), alpha));
+
+            // rot, the short way around
+            float rotFrom = p.get(qi + 9);
+            float rotDelta = c.get(qi + 9) - rotFrom;
+            rotDelta -= TWO_PI * (float)Math.floor((rotDelta + Math.PI) / TWO_PI);
+            o.put(qi + 9, rotFrom + (rotDelta * alpha));
+
+            // r, g, b, a
+            for(int f = 12; f <= 15; f++)
+                o.put(qi + f, lerp(p.get(qi + f), c.get(qi + f), alpha));
+        }
+        out.setQuadCount(quadCount);
+    }
+
+    static private float lerp(float from, float to, float alpha)
+    {
+        return from + ((to - from) * alpha);
+    }
+}
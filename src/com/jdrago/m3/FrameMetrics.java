@@ -0,0 +1,136 @@
+package com.jdrago.m3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// In-process frame telemetry: a latency histogram per frame phase and a handful of counters.
+// Phases are timed by whichever thread runs them (input, update and render on the sim thread;
+// decode, submit and swap on the GL thread), and snapshot() may be called from anywhere.
+//
+// M3Renderer dumps and resets it every FRAME_COUNTER_INTERVAL_MS, so its log lines cover one
+// interval each; snapshot() between dumps covers everything since the last one.
+public class FrameMetrics
+{
+    // --------------------------------------------------------------------------------------------
+    // Phases
+
+    static public final int INPUT = 0;  // touchBatch()
+    static public final int UPDATE = 1; // update(), once per simulation step
+    static public final int RENDER = 2; // render(), the script writing its commands
+    static public final int DECODE = 3; // turning commands into vertices (SpriteBatch)
+    static public final int SUBMIT = 4; // GL calls: uploads, binds, draws
+    static public final int SWAP = 5;   // eglSwapBuffers
+    static public final int PHASE_COUNT = 6;
+
+    static public final String[] PHASE_NAMES = { "input", "update", "render", "decode", "submit", "swap" };
+
+    // --------------------------------------------------------------------------------------------
+    // Counters
+
+    static public final int QUADS = 0;
+    static public final int DRAW_CALLS = 1;
+    static public final int TEXTURE_BINDS = 2;
+    static public final int FRAMES_DRAWN = 3;
+    static public final int FRAMES_SKIPPED = 4;
+    static public final int COUNTER_COUNT = 5;
+
+    static public final String[] COUNTER_NAMES = { "quads", "drawCalls", "textureBinds", "framesDrawn", "framesSkipped" };
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private Histogram[] phases_;
+    private AtomicLongArray counters_ = new AtomicLongArray(COUNTER_COUNT);
+    private volatile long intervalStartMillis_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public FrameMetrics()
+    {
+        phases_ = new Histogram[PHASE_COUNT];
+        for(int i = 0; i < PHASE_COUNT; i++)
+            phases_[i] = new Histogram();
+        intervalStartMillis_ = System.currentTimeMillis();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Recording
+
+    // startNanos is a System.nanoTime() taken when the phase began
+    public void endPhase(int phase, long startNanos)
+    {
+        phases_[phase].record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public void recordPhase(int phase, long nanos)
+    {
+        phases_[phase].record(nanos / 1000);
+    }
+
+    public void count(int counter, long amount)
+    {
+        counters_.addAndGet(counter, amount);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Reading
+
+    public Snapshot snapshot()
+    {
+        Snapshot snapshot = new Snapshot();
+        snapshot.intervalMillis = System.currentTimeMillis() - intervalStartMillis_;
+        for(int i = 0; i < PHASE_COUNT; i++)
+            phases_[i].snapshot(snapshot.phases[i]);
+        for(int i = 0; i < COUNTER_COUNT; i++)
+            snapshot.counters[i] = counters_.get(i);
+        return snapshot;
+    }
+
+    // Starts a new interval
+    public void reset()
+    {
+        for(int i = 0; i < PHASE_COUNT; i++)
+            phases_[i].reset();
+        for(int i = 0; i < COUNTER_COUNT; i++)
+            counters_.set(i, 0);
+        intervalStartMillis_ = System.currentTimeMillis();
+    }
+
+    // Everything recorded over one interval. Phase stats are in microseconds.
+    static public class Snapshot
+    {
+        public long intervalMillis;
+        public Histogram.Stats[] phases = new Histogram.Stats[PHASE_COUNT];
+        public long[] counters = new long[COUNTER_COUNT];
+
+        Snapshot()
+        {
+            for(int i = 0; i < PHASE_COUNT; i++)
+                phases[i] = new Histogram.Stats();
+        }
+
+        public Histogram.Stats phase(int phase)
+        {
+            return phases[phase];
+        }
+
+        public long counter(int counter)
+        {
+            return counters[counter];
+        }
+
+        // One line per phase plus one for the counters, for the log
+        public String[] lines()
+        {
+            String[] lines = new String[PHASE_COUNT + 1];
+            for(int i = 0; i < PHASE_COUNT; i++)
+                lines[i] = PHASE_NAMES[i] + ": " + phases[i];
+            StringBuilder counterLine = new StringBuilder();
+            counterLine.append("over ").append(intervalMillis).append("ms:");
+            for(int i = 0; i < COUNTER_COUNT; i++)
+                counterLine.append(' ').append(COUNTER_NAMES[i]).append('=').append(counters[i]);
+            lines[PHASE_COUNT] = counterLine.toString();
+            return lines;
+        }
+    }
+}
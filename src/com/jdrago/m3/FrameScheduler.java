@@ -0,0 +1,164 @@
+package com.jdrago.m3;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+// Drives frames from display vsync instead of timers. Frames only happen while someone has
+// asked for one (requestFrame()); when the game goes idle the scheduler stops listening to vsync
+// entirely. At most one frame is produced every frameInterval vsyncs, where frameInterval is the
+// display refresh rate divided by the target rate (60Hz display, 30fps target: every 2nd vsync).
+//
+// Everything here runs on the UI thread. Timestamps are monotonic nanoseconds (the
+// Choreographer's vsync time, or System.nanoTime() on the pre-Choreographer fallback).
+public class FrameScheduler
+{
+    // --------------------------------------------------------------------------------------------
+    // Client
+
+    public interface Client
+    {
+        // Called on the UI thread, aligned to vsync. frameTimeNanos is monotonic.
+        public void doFrame(long frameTimeNanos);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private Client client_;
+    private int frameInterval_;
+    private long vsyncPeriodNanos_;
+    private boolean running_;
+    private boolean needsFrame_;
+    private boolean callbackPosted_;
+    private int vsyncsUntilFrame_;
+
+    // Choreographer (API 16+) or a Handler fallback, never both
+    private Choreographer choreographer_;
+    private Choreographer.FrameCallback vsyncCallback_;
+    private Handler handler_;
+    private Runnable timerCallback_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public FrameScheduler(Client client, float refreshRate, int targetFps)
+    {
+        client_ = client;
+        if(refreshRate < 1)
+            refreshRate = 60;
+        vsyncPeriodNanos_ = (long)(1000000000.0 / refreshRate);
+        frameInterval_ = Math.max(1, Math.round(refreshRate / targetFps));
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+        {
+            choreographer_ = Choreographer.getInstance();
+            vsyncCallback_ = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onVsync(frameTimeNanos);
+                }
+            };
+        }
+        else
+        {
+            handler_ = new Handler(Looper.getMainLooper());
+            timerCallback_ = new Runnable() {
+                @Override
+                public void run() {
+                    onVsync(System.nanoTime());
+                }
+            };
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Control
+
+    // Frames are only delivered between start() and stop() (onResume/onPause)
+    public void start()
+    {
+        running_ = true;
+        if(needsFrame_)
+            postCallback();
+    }
+
+    public void stop()
+    {
+        running_ = false;
+        if(callbackPosted_)
+        {
+            if(choreographer_ != null)
+                choreographer_.removeFrameCallback(vsyncCallback_);
+            else
+                handler_.removeCallbacks(timerCallback_);
+            callbackPosted_ = false;
+        }
+    }
+
+    // Asks for a frame on an upcoming vsync. Cheap and idempotent; call it whenever something
+    // changed (input, animation still running, a texture became resident).
+    public void requestFrame()
+    {
+        needsFrame_ = true;
+        if(running_)
+            postCallback();
+    }
+
+    // Vsyncs per frame
+    public int frameInterval()
+    {
+        return frameInterval_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    private void postCallback()
+    {
+        if(callbackPosted_)
+            return;
+        callbackPosted_ = true;
+        if(choreographer_ != null)
+            choreographer_.postFrameCallback(vsyncCallback_);
+        else
+            handler_.postAtTime(timerCallback_, nextFallbackVsyncMillis());
+    }
+
+    private void onVsync(long frameTimeNanos)
+    {
+        callbackPosted_ = false;
+        if(!running_)
+            return;
+
+        if(vsyncsUntilFrame_ > 0)
+        {
+            // Waiting out the rest of the frame interval
+            vsyncsUntilFrame_--;
+            postCallback();
+            return;
+        }
+
+        if(!needsFrame_)
+            return; // idle: stop listening until the next requestFrame()
+
+        needsFrame_ = false;
+        vsyncsUntilFrame_ = frameInterval_ - 1;
+        client_.doFrame(frameTimeNanos);
+
+        // The client calls requestFrame() again if it wants another one, but the interval
+        // countdown has to keep running either way
+        if(vsyncsUntilFrame_ > 0)
+            postCallback();
+    }
+
+    // The pre-Choreographer fallback can't see vsync, so it just keeps to the same period
+    private long nextFallbackVsyncMillis()
+    {
+        long periodMillis = Math.max(1, vsyncPeriodNanos_ / 1000000);
+        long now = SystemClock.uptimeMillis();
+        return now + periodMillis - (now % periodMillis);
+    }
+}
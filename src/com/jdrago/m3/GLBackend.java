@@ -0,0 +1,37 @@
+package com.jdrago.m3;
+
+// Everything a frame needs from the graphics API, and nothing else. The renderer hands a
+// CommandBuffer to SpriteBatch, which decodes it into batches of vertices (SpriteBatch layout:
+// X Y U V R G B A, 4 vertices per quad, quads drawn as triangles 0-1-2 and 2-3-0) and passes
+// each batch to drawQuads. Draws are alpha blended (SRC_ALPHA, ONE_MINUS_SRC_ALPHA) and the
+// vertex color modulates the texel. The renderer's texture bookkeeping (placeholders while the
+// atlas loads, deleting what the loaded pages replace) and its error checks go through here too.
+//
+// * GLES20Backend is the real thing, on the device.
+// * RecordingBackend captures the calls and state changes, for checking and profiling the
+//   pipeline without a GPU.
+// * SoftwareBackend rasterizes into an ARGB pixel array, for golden image comparisons.
+//
+// The last two are plain Java and run on any JVM.
+public interface GLBackend extends SpriteBatch.Sink
+{
+    // Starts a frame: sets the viewport to width x height, clears it to (r, g, b, 1) and sets the
+    // column-major 4x4 matrix taking vertex positions to clip space
+    public void beginFrame(int width, int height, float r, float g, float b, float[] viewProjMatrix);
+
+    // Draws quadCount quads from vertData with texture bound (a bind is only a state change if it
+    // differs from the last one this frame)
+    public void drawQuads(Texture texture, float[] vertData, int quadCount);
+
+    public void endFrame();
+
+    // A 1x1 transparent texture standing in for a width x height one that isn't loaded yet.
+    // width/height are those of the real texture, so UVs computed against it stay in range.
+    public Texture createPlaceholder(double width, double height);
+
+    // Frees texture; it must not be drawn with afterwards
+    public void deleteTexture(Texture texture);
+
+    // Throws if anything since the last check failed; op names what was being done
+    public void checkError(String op);
+}
@@ -0,0 +1,256 @@
+package com.jdrago.m3;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// GLBackend on the device: one shader program, the GpuBuffers ring, a texture bind per batch at
+// most. Must be used on the GL thread with the context current.
+public class GLES20Backend implements GLBackend
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final String TAG = "M3";
+
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int VERTEX_STRIDE_BYTES = SpriteBatch.FLOATS_PER_VERTEX * FLOAT_SIZE_BYTES;
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;\n" +
+                    "attribute vec4 aPosition;\n" +
+                    "attribute vec2 aTextureCoord;\n" +
+                    "attribute vec4 aColor;\n" +
+                    "varying vec2 vTextureCoord;\n" +
+                    "varying vec4 vColor;\n" +
+                    "void main() {\n" +
+                    "  gl_Position = uMVPMatrix * aPosition;\n" +
+                    "  vTextureCoord = aTextureCoord;\n" +
+                    "  vColor = aColor;\n" +
+                    "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTextureCoord;\n" +
+                    "varying vec4 vColor;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "vec4 t = texture2D(sTexture, vTextureCoord);" +
+                    "gl_FragColor.rgba = vColor.rgba * t.rgba;\n" +
+                    "}\n";
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private GpuBuffers gpuBuffers_;
+    private int currentTextureID_;
+    private int shaderProgram_;
+    private int viewProjMatrixHandle_;
+    private int posHandle_;
+    private int texHandle_;
+    private int colorHandle_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public GLES20Backend()
+    {
+        gpuBuffers_ = new GpuBuffers(SpriteBatch.MAX_QUADS);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Lifetime
+
+    // (Re)creates the program and buffers. Call from onSurfaceCreated.
+    public void create()
+    {
+        shaderProgram_ = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        if (shaderProgram_ == 0)
+        {
+            throw new RuntimeException("Could not create the sprite shader program");
+        }
+        posHandle_ = GLES20.glGetAttribLocation(shaderProgram_, "aPosition");
+        checkGlError("glGetAttribLocation aPosition");
+        if (posHandle_ == -1)
+        {
+            throw new RuntimeException("Could not get attrib location for aPosition");
+        }
+        texHandle_ = GLES20.glGetAttribLocation(shaderProgram_, "aTextureCoord");
+        checkGlError("glGetAttribLocation aTextureCoord");
+        if (texHandle_ == -1)
+        {
+            throw new RuntimeException("Could not get attrib location for aTextureCoord");
+        }
+
+        viewProjMatrixHandle_ = GLES20.glGetUniformLocation(shaderProgram_, "uMVPMatrix");
+        checkGlError("glGetUniformLocation uMVPMatrix");
+        if (viewProjMatrixHandle_ == -1)
+        {
+            throw new RuntimeException("Could not get attrib location for uMVPMatrix");
+        }
+
+        colorHandle_ = GLES20.glGetAttribLocation(shaderProgram_, "aColor");
+        checkGlError("glGetAttribLocation aColor");
+        if (colorHandle_ == -1)
+        {
+            throw new RuntimeException("Could not get attrib location for aColor");
+        }
+
+        gpuBuffers_.create();
+    }
+
+    public GpuBuffers gpuBuffers()
+    {
+        return gpuBuffers_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // GLBackend
+
+    public void beginFrame(int width, int height, float r, float g, float b, float[] viewProjMatrix)
+    {
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClearColor(r, g, b, 1.0f);
+        GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+        GLES20.glUseProgram(shaderProgram_);
+        checkGlError("glUseProgram");
+
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glUniformMatrix4fv(viewProjMatrixHandle_, 1, false, viewProjMatrix, 0);
+
+        gpuBuffers_.beginFrame();
+        currentTextureID_ = -1;
+    }
+
+    public void drawQuads(Texture texture, float[] vertData, int quadCount)
+    {
+        if(currentTextureID_ != texture.id)
+        {
+            currentTextureID_ = texture.id;
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, currentTextureID_);
+        }
+
+        int offset = gpuBuffers_.uploadVertices(vertData, quadCount * SpriteBatch.FLOATS_PER_QUAD);
+
+        GLES20.glVertexAttribPointer(posHandle_, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE_BYTES, offset + (SpriteBatch.POS_OFFSET * FLOAT_SIZE_BYTES));
+        checkGlError("glVertexAttribPointer posHandle");
+        GLES20.glEnableVertexAttribArray(posHandle_);
+        checkGlError("glEnableVertexAttribArray posHandle");
+        GLES20.glVertexAttribPointer(texHandle_, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE_BYTES, offset + (SpriteBatch.UV_OFFSET * FLOAT_SIZE_BYTES));
+        checkGlError("glVertexAttribPointer texHandle");
+        GLES20.glEnableVertexAttribArray(texHandle_);
+        checkGlError("glEnableVertexAttribArray texHandle");
+        GLES20.glVertexAttribPointer(colorHandle_, 4, GLES20.GL_FLOAT, false, VERTEX_STRIDE_BYTES, offset + (SpriteBatch.COLOR_OFFSET * FLOAT_SIZE_BYTES));
+        checkGlError("glVertexAttribPointer colorHandle");
+        GLES20.glEnableVertexAttribArray(colorHandle_);
+        checkGlError("glEnableVertexAttribArray colorHandle");
+
+        // Indices always start at zero: every batch is uploaded as its own run of vertices
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, quadCount * SpriteBatch.INDICES_PER_QUAD, GLES20.GL_UNSIGNED_SHORT, 0);
+        checkGlError("glDrawElements");
+    }
+
+    public void endFrame()
+    {
+    }
+
+    public Texture createPlaceholder(double width, double height)
+    {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+        Texture texture = new Texture();
+        texture.id = textures[0];
+        texture.width = width;
+        texture.height = height;
+        texture.levels = 1;
+        texture.bytes = 4;
+        return texture;
+    }
+
+    public void deleteTexture(Texture texture)
+    {
+        GLES20.glDeleteTextures(1, new int[] { texture.id }, 0);
+    }
+
+    public void checkError(String op)
+    {
+        checkGlError(op);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Shaders
+
+    private int loadShader(int shaderType, String source)
+    {
+        int shader = GLES20.glCreateShader(shaderType);
+        if (shader != 0)
+        {
+            GLES20.glShaderSource(shader, source);
+            GLES20.glCompileShader(shader);
+            int[] compiled = new int[1];
+            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+            if (compiled[0] == 0)
+            {
+                Log.e(TAG, "Could not compile shader " + shaderType + ":");
+                Log.e(TAG, GLES20.glGetShaderInfoLog(shader));
+                GLES20.glDeleteShader(shader);
+                shader = 0;
+            }
+        }
+        return shader;
+    }
+
+    private int createProgram(String vertexSource, String fragmentSource)
+    {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        if (vertexShader == 0)
+        {
+            return 0;
+        }
+
+        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        if (pixelShader == 0)
+        {
+            return 0;
+        }
+
+        int program = GLES20.glCreateProgram();
+        if (program != 0)
+        {
+            GLES20.glAttachShader(program, vertexShader);
+            checkGlError("glAttachShader");
+            GLES20.glAttachShader(program, pixelShader);
+            checkGlError("glAttachShader");
+            GLES20.glLinkProgram(program);
+            int[] linkStatus = new int[1];
+            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            if (linkStatus[0] != GLES20.GL_TRUE)
+            {
+                Log.e(TAG, "Could not link program: ");
+                Log.e(TAG, GLES20.glGetProgramInfoLog(program));
+                GLES20.glDeleteProgram(program);
+                program = 0;
+            }
+        }
+        return program;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Helper functions
+
+    static void checkGlError(String op)
+    {
+        int error;
+        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR)
+        {
+            Log.e(TAG, op + ": glError " + error);
+            throw new RuntimeException(op + ": glError " + error);
+        }
+    }
+}
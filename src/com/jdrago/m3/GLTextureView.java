@@ -33,8 +33,13 @@ import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 import android.content.Context;
 import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.TextureView;
@@ -49,6 +54,11 @@ import com.jdrago.m3.egl.SurfaceColorSpec;
 public class GLTextureView extends TextureView implements TextureView.SurfaceTextureListener {
     static final String TAG = GLTextureView.class.getSimpleName();
 
+    /**
+     * how long a continuous rendering thread waits after a frame that drew nothing
+     */
+    static final long CONTINUOUS_IDLE_WAIT_MS = 1;
+
     /**
      * callback object
      */
@@ -89,18 +99,53 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
      */
     Thread backgroundThread = null;
 
+    /**
+     * the thread that owns the context, for {@link RenderingThreadType#OwnedThread}
+     */
+    Handler renderingHandler = null;
+
     /**
      * Surface Destroyed
      */
     boolean destroyed = false;
 
     /**
-     * Thread Sleep
+     * Thread Sleep (paused by the owner), guarded by {@link #lock}
      */
     boolean sleep = false;
 
+    /**
+     * the background thread has seen {@link #sleep} and stopped drawing, guarded by {@link #lock}
+     */
+    boolean threadPaused = false;
+
+    /**
+     * a frame was asked for and the background thread hasn't drawn it yet, guarded by {@link #lock}
+     */
+    boolean renderRequested = false;
+
+    /**
+     * when the background thread draws
+     */
+    RenderMode renderMode = RenderMode.Continuous;
+
     boolean initialized = false;
 
+    /**
+     * keep the EGL context (and the renderer's GL objects) while there is no surface
+     */
+    boolean preserveEGLContextOnPause = false;
+
+    /**
+     * a window surface is attached and can be drawn to
+     */
+    boolean hasSurface = false;
+
+    /**
+     * renderer.onSurfaceCreated() has run in the current context
+     */
+    boolean rendererCreated = false;
+
     /**
      * surface texture width
      */
@@ -133,16 +178,103 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
 
     /**
      * Activity#onPause() || Fragment#onPause()
+     *
+     * With a background thread, returns once it has finished any frame in progress and stopped.
      */
     public void onPause() {
-        sleep = true;
+        synchronized (lock) {
+            sleep = true;
+            lock.notifyAll();
+            waitForThread(true);
+        }
     }
 
     /**
      * Activity#onResume() || Fragment#onResume()
+     *
+     * With a background thread, returns once it is running again; it draws a frame right away.
      */
     public void onResume() {
-        sleep = false;
+        synchronized (lock) {
+            sleep = false;
+            renderRequested = true;
+            lock.notifyAll();
+            waitForThread(false);
+        }
+    }
+
+    /**
+     * Waits (with {@link #lock} held) for the background thread, if running, to acknowledge a
+     * pause or resume.
+     */
+    void waitForThread(boolean paused) {
+        while (backgroundThread != null && backgroundThread.isAlive() && !destroyed
+                && threadPaused != paused) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * When the background thread draws; see {@link RenderMode}. May be changed at any time.
+     * @param mode
+     */
+    public void setRenderMode(RenderMode mode) {
+        synchronized (lock) {
+            renderMode = mode;
+            lock.notifyAll();
+        }
+    }
+
+    public RenderMode getRenderMode() {
+        synchronized (lock) {
+            return renderMode;
+        }
+    }
+
+    /**
+     * Keeps the EGL context, and with it the renderer's shaders, buffers and textures, when the
+     * surface is destroyed (the app going to the background, usually). When a surface comes back
+     * only a new window surface is attached and the renderer gets onSurfaceChanged() alone.
+     * If the context turns out to have been lost meanwhile, the renderer gets onSurfaceDestroyed()
+     * and then onSurfaceCreated() in a new context, as on first start.
+     * @param preserve
+     */
+    public void setPreserveEGLContextOnPause(boolean preserve) {
+        synchronized (lock) {
+            if (isInitialized()) {
+                throw new UnsupportedOperationException("GLTextureView Initialized");
+            }
+            this.preserveEGLContextOnPause = preserve;
+        }
+    }
+
+    /**
+     * {@link RenderingThreadType#OwnedThread}: releases the context, and every GL object the
+     * renderer made in it, on the rendering thread and waits for that. For owners that stop the
+     * rendering thread before the view is detached (and so before the surface is destroyed):
+     * call this first, while the thread still runs. The view draws nothing afterwards.
+     */
+    public void releaseEGLContext() {
+        synchronized (lock) {
+            if (renderingThreadType != RenderingThreadType.OwnedThread) {
+                throw new UnsupportedOperationException("OwnedThread only");
+            }
+            if (!isInitialized()) {
+                return;
+            }
+            initialized = false;
+        }
+        runOnRenderingThread(new Runnable() {
+            @Override
+            public void run() {
+                releaseContext();
+            }
+        }, true);
     }
 
     /**
@@ -220,14 +352,47 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
         }
     }
 
+    /**
+     * The thread that owns the context in {@link RenderingThreadType#OwnedThread} mode. Every
+     * EGL call and every renderer callback happens on it, and surface changes are posted to it.
+     * @param handler
+     */
+    public void setRenderingHandler(Handler handler) {
+        synchronized (lock) {
+            if (isInitialized()) {
+                throw new UnsupportedOperationException("GLTextureView Initialized");
+            }
+            this.renderingHandler = handler;
+        }
+    }
+
     /**
      * start rendering
      * call {@link GLTextureView#onRendering()}
      *
+     * In {@link RenderingThreadType#OwnedThread} mode this must be called on the rendering thread.
+     * In {@link RenderingThreadType#BackgroundThread} mode it may be called from any thread, and
+     * only wakes the background thread to draw a frame.
      */
     public void requestRender() {
+        if (renderingThreadType == RenderingThreadType.BackgroundThread) {
+            synchronized (lock) {
+                renderRequested = true;
+                lock.notifyAll();
+            }
+            return;
+        }
+
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            // the context is already current here: no lock, no eglMakeCurrent
+            if (hasSurface) {
+                onRenderingOwned();
+            }
+            return;
+        }
+
         synchronized (lock) {
-            if (!isInitialized()) {
+            if (!isInitialized() || !hasSurface) {
                 // throw new UnsupportedOperationException("GLTextureView not initialized");
                 return;
             }
@@ -241,6 +406,11 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
      * @param runnable
      */
     public void requestAction(Runnable runnable) {
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            runOnRenderingThread(runnable, true);
+            return;
+        }
+
         synchronized (lock) {
             if (!isInitialized()) {
                 throw new UnsupportedOperationException("GLTextureView not initialized");
@@ -253,12 +423,27 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
     }
 
     @Override
-    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+    public void onSurfaceTextureAvailable(final SurfaceTexture surface, final int width, final int height) {
         Log.d(TAG, "onSurfaceTextureAvailable");
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            synchronized (lock) {
+                initialized = true;
+            }
+            runOnRenderingThread(new Runnable() {
+                @Override
+                public void run() {
+                    attachSurface(surface, width, height);
+                }
+            }, false);
+            return;
+        }
+
         synchronized (lock) {
 
             surfaceWidth = width;
             surfaceHeight = height;
+            destroyed = false;
+            hasSurface = true;
 
             if (!isInitialized()) {
                 eglManager = new EGLManager();
@@ -281,16 +466,19 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
                     // UIThread || request
                     eglManager.bind();
                     renderer.onSurfaceCreated(gl11, eglManager.getConfig());
+                    rendererCreated = true;
                     renderer.onSurfaceChanged(gl11, width, height);
                     eglManager.unbind();
                 }
             } else {
+                // preserved context: only the window surface is new
                 eglManager.resize(surface);
 
                 if (renderingThreadType != RenderingThreadType.BackgroundThread) {
                     // UIThread || request
-                    eglManager.bind();
-                    renderer.onSurfaceChanged(gl11, width, height);
+                    if (bindOrRecreate()) {
+                        renderer.onSurfaceChanged(gl11, width, height);
+                    }
                     eglManager.unbind();
                 }
             }
@@ -298,6 +486,8 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
             initialized = true;
             if (renderingThreadType == RenderingThreadType.BackgroundThread) {
                 // background
+                threadPaused = false;
+                renderRequested = true;
                 backgroundThread = createRenderingThread();
                 backgroundThread.start();
             }
@@ -306,7 +496,17 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
     }
 
     @Override
-    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+    public void onSurfaceTextureSizeChanged(final SurfaceTexture surface, final int width, final int height) {
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            runOnRenderingThread(new Runnable() {
+                @Override
+                public void run() {
+                    attachSurface(surface, width, height);
+                }
+            }, false);
+            return;
+        }
+
         synchronized (lock) {
 
             surfaceWidth = width;
@@ -319,6 +519,9 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
                 eglManager.bind();
                 renderer.onSurfaceChanged(gl11, width, height);
                 eglManager.unbind();
+            } else {
+                // the new size wakes the background thread
+                lock.notifyAll();
             }
         }
     }
@@ -326,14 +529,41 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
     @Override
     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
         destroyed = true;
-        try {
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            synchronized (lock) {
+                if (!isInitialized()) {
+                    // already released (see releaseEGLContext)
+                    return true;
+                }
+            }
+            // the surface texture is released when this returns, so wait until EGL is off it
+            runOnRenderingThread(new Runnable() {
+                @Override
+                public void run() {
+                    detachSurface();
+                }
+            }, true);
             synchronized (lock) {
+                if (!preserveEGLContextOnPause) {
+                    initialized = false;
+                }
+            }
+            return true;
+        }
 
-                if (renderingThreadType != RenderingThreadType.BackgroundThread) {
-                    // UIThread || request
-                    eglManager.bind();
-                    renderer.onSurfaceDestroyed(gl11);
-                    eglManager.releaseThread();
+        try {
+            synchronized (lock) {
+                hasSurface = false;
+                lock.notifyAll(); // the background thread exits and is joined below
+
+                if (!preserveEGLContextOnPause) {
+                    if (renderingThreadType != RenderingThreadType.BackgroundThread) {
+                        // UIThread || request
+                        eglManager.bind();
+                        renderer.onSurfaceDestroyed(gl11);
+                        rendererCreated = false;
+                        eglManager.releaseThread();
+                    }
                     initialized = false;
                 }
             }
@@ -348,7 +578,11 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
                 }
             }
         } finally {
-            eglManager.destroy();
+            if (preserveEGLContextOnPause) {
+                eglManager.destroySurface();
+            } else {
+                eglManager.destroy();
+            }
         }
 
         // auto release
@@ -363,18 +597,212 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
     public void onSurfaceTextureUpdated(SurfaceTexture surface) {
     }
 
+    /**
+     * A preserved context outlives its surfaces, so it is released here, once the view is gone
+     * for good.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (renderingThreadType == RenderingThreadType.OwnedThread) {
+            synchronized (lock) {
+                if (!preserveEGLContextOnPause || !isInitialized()) {
+                    return;
+                }
+                initialized = false;
+            }
+            runOnRenderingThread(new Runnable() {
+                @Override
+                public void run() {
+                    releaseContext();
+                }
+            }, true);
+            return;
+        }
+
+        synchronized (lock) {
+            if (!preserveEGLContextOnPause || !isInitialized() || hasSurface) {
+                return;
+            }
+            if (rendererCreated) {
+                renderer.onSurfaceDestroyed(gl11);
+                rendererCreated = false;
+            }
+            eglManager.destroy();
+            initialized = false;
+        }
+    }
+
     /**
      *
      */
     protected void onRendering() {
-        eglManager.bind();
+        if (!bindOrRecreate()) {
+            eglManager.unbind();
+            return;
+        }
+        boolean drawn;
         {
-            renderer.onDrawFrame(gl11);
+            drawn = renderer.onDrawFrame(gl11);
+        }
+        if (drawn && !eglManager.swapBuffers() && eglManager.isContextLost()) {
+            // the frame is gone with the context; the renderer starts over and draws next time
+            recreateContext();
         }
-        eglManager.swapBuffers();
         eglManager.unbind();
     }
 
+    /**
+     * {@link RenderingThreadType#OwnedThread}: on the rendering thread, with the context current
+     * since the surface was attached.
+     */
+    void onRenderingOwned() {
+        boolean drawn = renderer.onDrawFrame(gl11);
+        if (drawn && !eglManager.swapBuffers() && eglManager.isContextLost()) {
+            recreateContext();
+        }
+    }
+
+    /**
+     * {@link RenderingThreadType#OwnedThread}: (re)attaches a window surface, creating the
+     * manager and the renderer's objects first if there are none. The context is made current
+     * here, with the new surface, and stays current until the surface goes away.
+     */
+    void attachSurface(SurfaceTexture surface, int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
+
+        if (eglManager == null) {
+            if (eglConfigChooser == null) {
+                eglConfigChooser = new DefaultEGLConfigChooser();
+            }
+            eglManager = new EGLManager();
+            eglManager.initialize(eglConfigChooser, version);
+            eglManager.setOwnerThread();
+            if (version == GLESVersion.OpenGLES11) {
+                gl11 = eglManager.getGL11();
+            }
+        }
+
+        eglManager.resize(surface);
+        hasSurface = true;
+        if (!bindOrRecreate()) {
+            return;
+        }
+        if (!rendererCreated) {
+            renderer.onSurfaceCreated(gl11, eglManager.getConfig());
+            rendererCreated = true;
+        }
+        renderer.onSurfaceChanged(gl11, width, height);
+    }
+
+    /**
+     * {@link RenderingThreadType#OwnedThread}: the surface is going away. A preserved context is
+     * kept, made current nowhere; otherwise everything is released.
+     */
+    void detachSurface() {
+        if (eglManager == null) {
+            return;
+        }
+        hasSurface = false;
+        if (preserveEGLContextOnPause) {
+            eglManager.releaseThread();
+            eglManager.destroySurface();
+        } else {
+            releaseContext();
+        }
+    }
+
+    /**
+     * {@link RenderingThreadType#OwnedThread}: tells the renderer and destroys the context. The
+     * context is current only if a surface still is.
+     */
+    void releaseContext() {
+        if (eglManager == null) {
+            return;
+        }
+        if (rendererCreated) {
+            renderer.onSurfaceDestroyed(gl11);
+            rendererCreated = false;
+        }
+        eglManager.releaseThread();
+        eglManager.destroy();
+        eglManager = null;
+        hasSurface = false;
+    }
+
+    /**
+     * {@link RenderingThreadType#OwnedThread}: runs task on the rendering thread (right away if
+     * already on it), waiting for it if asked. If that thread's looper has quit, nothing can use
+     * the context any more and the task is dropped.
+     */
+    void runOnRenderingThread(Runnable task, boolean wait) {
+        if (renderingHandler == null) {
+            throw new IllegalStateException("OwnedThread rendering needs setRenderingHandler()");
+        }
+        if (renderingHandler.getLooper() == Looper.myLooper()) {
+            task.run();
+            return;
+        }
+
+        FutureTask<Void> future = new FutureTask<Void>(task, null);
+        if (!renderingHandler.post(future)) {
+            Log.w(TAG, "rendering thread has quit, dropping a surface change");
+            return;
+        }
+        if (!wait) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Binds the context, replacing it first if it was lost (only possible with a preserved
+     * context). Returns false if it still can't be bound.
+     * Call with {@link #lock} held.
+     */
+    boolean bindOrRecreate() {
+        if (eglManager.bind()) {
+            return true;
+        }
+        if (!eglManager.isContextLost()) {
+            Log.w(TAG, "eglMakeCurrent failed");
+            return false;
+        }
+        recreateContext();
+        return true;
+    }
+
+    /**
+     * The context, and every GL object the renderer made in it, is gone. The renderer is told so
+     * (with no context current, so it must only forget its objects) and then set up again from
+     * scratch in a new context, which is left current.
+     * Call with {@link #lock} held.
+     */
+    void recreateContext() {
+        Log.w(TAG, "EGL context lost, recreating it");
+        if (rendererCreated) {
+            renderer.onSurfaceDestroyed(gl11);
+            rendererCreated = false;
+        }
+        eglManager.recreateContext();
+        if (version == GLESVersion.OpenGLES11) {
+            gl11 = eglManager.getGL11();
+        }
+        if (!eglManager.bind()) {
+            throw new RuntimeException("eglMakeCurrent failed on a new context");
+        }
+        renderer.onSurfaceCreated(gl11, eglManager.getConfig());
+        rendererCreated = true;
+        renderer.onSurfaceChanged(gl11, surfaceWidth, surfaceHeight);
+    }
+
     /**
      * OpenGL ES Version
      */
@@ -433,19 +861,40 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
 
         /**
          * rendering.
+         * @return false if nothing was drawn, in which case the buffers are not swapped and the
+         *         previous frame stays on screen
          */
-        public void onDrawFrame(GL10 gl);
+        public boolean onDrawFrame(GL10 gl);
 
         /**
-         * destroyed
+         * destroyed, along with the context and every GL object in it. Not called when the
+         * context is preserved across surface loss. When a preserved context was lost, or is
+         * released as the view detaches, no context is current and the renderer should only
+         * forget its GL objects.
          * @param gl
          */
         public void onSurfaceDestroyed(GL10 gl);
     }
 
+    /**
+     * When a {@link RenderingThreadType#BackgroundThread} draws
+     */
+    public enum RenderMode {
+        /**
+         * Frame after frame, paced by eglSwapBuffers
+         */
+        Continuous,
+
+        /**
+         * Only after {@link GLTextureView#requestRender()}, a resume or a surface change; the
+         * thread sleeps in between
+         */
+        WhenDirty,
+    }
+
     public enum RenderingThreadType {
         /**
-         * Rendering on Background Loop
+         * Rendering on Background Loop, continuously or when dirty (see {@link RenderMode})
          */
         BackgroundThread,
 
@@ -453,6 +902,14 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
          * Rendering on {@link GLTextureView#requestRendering()}
          */
         RequestThread,
+
+        /**
+         * Rendering on {@link GLTextureView#requestRender()} from the thread given to
+         * {@link GLTextureView#setRenderingHandler(Handler)}, which owns the context: it is made
+         * current once per surface and kept, surface changes are posted to that thread, and
+         * drawing a frame takes no lock.
+         */
+        OwnedThread,
     }
 
     protected Thread createRenderingThread() {
@@ -462,50 +919,87 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
 
             @Override
             public void run() {
-                // created
-                eglManager.bind();
-                {
-                    renderer.onSurfaceCreated(gl11, eglManager.getConfig());
+                // created (unless the context was preserved)
+                synchronized (lock) {
+                    if (!rendererCreated) {
+                        eglManager.bind();
+                        renderer.onSurfaceCreated(gl11, eglManager.getConfig());
+                        rendererCreated = true;
+                        eglManager.unbind();
+                    }
                 }
-                eglManager.unbind();
 
-                while (!destroyed) {
-                    int sleepTime = 1;
-                    if (!sleep) {
-                        synchronized (lock) {
-                            eglManager.bind();
+                while (true) {
+                    synchronized (lock) {
+                        if (!waitForWork()) {
+                            break;
+                        }
+                        renderRequested = false;
 
+                        boolean drawn = false;
+                        if (bindOrRecreate()) {
                             if (width != surfaceWidth || height != surfaceHeight) {
                                 width = surfaceWidth;
                                 height = surfaceHeight;
                                 renderer.onSurfaceChanged(gl11, width, height);
                             }
 
-                            renderer.onDrawFrame(gl11);
+                            drawn = renderer.onDrawFrame(gl11);
 
                             // post
-                            if (!destroyed) {
-                                eglManager.swapBuffers();
+                            if (drawn && !eglManager.swapBuffers() && eglManager.isContextLost()) {
+                                recreateContext();
+                            }
+                        }
+                        eglManager.unbind();
+
+                        if (!drawn && renderMode == RenderMode.Continuous) {
+                            // nothing was swapped to pace us; don't spin
+                            try {
+                                lock.wait(CONTINUOUS_IDLE_WAIT_MS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
                             }
-                            eglManager.unbind();
                         }
-                    } else {
-                        sleepTime = 10;
                     }
+                }
 
-                    try {
-                        // sleep rendering thread
-                        Thread.sleep(sleepTime);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                // destroy (unless the context is preserved)
+                synchronized (lock) {
+                    if (!preserveEGLContextOnPause) {
+                        eglManager.bind();
+                        renderer.onSurfaceDestroyed(gl11);
+                        rendererCreated = false;
+                        eglManager.releaseThread();
                     }
+                    threadPaused = false;
+                    lock.notifyAll();
                 }
+            }
 
-                // destroy
-                synchronized (lock) {
-                    eglManager.bind();
-                    renderer.onSurfaceDestroyed(gl11);
-                    eglManager.releaseThread();
+            /**
+             * Blocks (with {@link #lock} held, released while waiting) until there is a frame to
+             * draw, acknowledging pause and resume on the way. Returns false when the thread
+             * should exit.
+             */
+            boolean waitForWork() {
+                while (true) {
+                    if (destroyed || Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    if (threadPaused != sleep) {
+                        threadPaused = sleep;
+                        lock.notifyAll();
+                    }
+                    if (!sleep && (renderMode == RenderMode.Continuous || renderRequested
+                            || width != surfaceWidth || height != surfaceHeight)) {
+                        return true;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
                 }
             }
         };
@@ -0,0 +1,169 @@
+package com.jdrago.m3;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+// Owns the GL buffer objects the sprite renderer draws from:
+//
+// * A static index buffer holding the quad indices for the largest possible batch. It is built
+//   once per context and never touched again.
+// * A ring of streaming vertex buffers. Each frame moves to the next buffer in the ring and
+//   orphans it (glBufferData with no data), then batches are appended into it with
+//   glBufferSubData at increasing offsets, so the driver never has to wait on a buffer the GPU
+//   might still be reading. If a frame needs more room than a buffer has, the ring grows.
+//
+// All methods must be called on the GL thread with the context current.
+public class GpuBuffers
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final int FLOAT_SIZE_BYTES = 4;
+    static private final int SHORT_SIZE_BYTES = 2;
+    static private final int RING_SIZE = 3;
+    static private final int INITIAL_VERTEX_BUFFER_BYTES = 64 * 1024;
+    static private final short[] QUAD_INDICES = {0, 1, 2, 2, 3, 0};
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private int maxQuads_;
+    private int indexBuffer_;
+    private int[] vertexBuffers_ = new int[RING_SIZE];
+    private int vertexBufferBytes_;
+    private int ringIndex_;
+    private int writeOffset_;
+    private FloatBuffer staging_;
+
+    // Counters
+    private int bytesThisFrame_;
+    private int bytesLastFrame_;
+    private long bytesTotal_;
+    private int growCount_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public GpuBuffers(int maxQuads)
+    {
+        maxQuads_ = maxQuads;
+        vertexBufferBytes_ = INITIAL_VERTEX_BUFFER_BYTES;
+        staging_ = ByteBuffer.allocateDirect(maxQuads_ * SpriteBatch.FLOATS_PER_QUAD * FLOAT_SIZE_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Lifetime
+
+    // (Re)creates every GL object. Call from onSurfaceCreated; any names from a previous context
+    // are simply forgotten, as they died with it.
+    public void create()
+    {
+        int[] names = new int[1 + RING_SIZE];
+        GLES20.glGenBuffers(names.length, names, 0);
+        indexBuffer_ = names[0];
+        for(int i = 0; i < RING_SIZE; i++)
+            vertexBuffers_[i] = names[1 + i];
+
+        ShortBuffer indices = ByteBuffer.allocateDirect(maxQuads_ * QUAD_INDICES.length * SHORT_SIZE_BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+        for(int quad = 0; quad < maxQuads_; quad++)
+        {
+            for(int i = 0; i < QUAD_INDICES.length; i++)
+            {
+                indices.put((short)((quad * 4) + QUAD_INDICES[i]));
+            }
+        }
+        indices.position(0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer_);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * SHORT_SIZE_BYTES, indices, GLES20.GL_STATIC_DRAW);
+
+        for(int i = 0; i < RING_SIZE; i++)
+        {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffers_[i]);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBufferBytes_, null, GLES20.GL_STREAM_DRAW);
+        }
+
+        ringIndex_ = 0;
+        writeOffset_ = 0;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Per frame
+
+    // Moves to the next vertex buffer in the ring and orphans it, and binds the index buffer
+    public void beginFrame()
+    {
+        bytesLastFrame_ = bytesThisFrame_;
+        bytesThisFrame_ = 0;
+
+        ringIndex_ = (ringIndex_ + 1) % RING_SIZE;
+        writeOffset_ = 0;
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffers_[ringIndex_]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBufferBytes_, null, GLES20.GL_STREAM_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer_);
+    }
+
+    // Appends vertex data to this frame's vertex buffer, leaving it bound to GL_ARRAY_BUFFER.
+    // Returns the byte offset the data landed at, for use with glVertexAttribPointer.
+    public int uploadVertices(float[] vertData, int floatCount)
+    {
+        int byteCount = floatCount * FLOAT_SIZE_BYTES;
+        if(writeOffset_ + byteCount > vertexBufferBytes_)
+        {
+            if(byteCount > vertexBufferBytes_)
+            {
+                // A single batch doesn't fit: grow every buffer in the ring from here on
+                while(byteCount > vertexBufferBytes_)
+                    vertexBufferBytes_ *= 2;
+                growCount_++;
+            }
+
+            // Out of room this frame; orphan and start over at the front. The draws already
+            // issued keep the old storage alive until the GPU is done with it.
+            writeOffset_ = 0;
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBufferBytes_, null, GLES20.GL_STREAM_DRAW);
+        }
+
+        staging_.position(0);
+        staging_.put(vertData, 0, floatCount);
+        staging_.position(0);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, writeOffset_, byteCount, staging_);
+
+        int offset = writeOffset_;
+        writeOffset_ += byteCount;
+        bytesThisFrame_ += byteCount;
+        bytesTotal_ += byteCount;
+        return offset;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Counters
+
+    public int bytesUploadedThisFrame()
+    {
+        return bytesThisFrame_;
+    }
+
+    public int bytesUploadedLastFrame()
+    {
+        return bytesLastFrame_;
+    }
+
+    public long bytesUploadedTotal()
+    {
+        return bytesTotal_;
+    }
+
+    public int vertexBufferBytes()
+    {
+        return vertexBufferBytes_;
+    }
+
+    public int growCount()
+    {
+        return growCount_;
+    }
+}
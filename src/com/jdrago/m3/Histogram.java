@@ -0,0 +1,131 @@
+package com.jdrago.m3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-size latency histogram, in microseconds. Buckets are log-linear: exact below 16us, then
+// eight per power of two, so any percentile read back is within 12.5% of the true value and
+// recording never allocates. Safe to record from one thread while another snapshots; a reset()
+// racing a record() may lose that one sample.
+public class Histogram
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final int LINEAR_BUCKETS = 16;
+    static private final int SUB_BUCKET_BITS = 3;
+    static private final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static private final int LINEAR_BITS = 4; // log2(LINEAR_BUCKETS)
+    static public  final int BUCKET_COUNT = LINEAR_BUCKETS + ((63 - LINEAR_BITS) * SUB_BUCKETS);
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private AtomicLongArray buckets_ = new AtomicLongArray(BUCKET_COUNT);
+    private AtomicLong count_ = new AtomicLong();
+    private AtomicLong sum_ = new AtomicLong();
+    private AtomicLong max_ = new AtomicLong();
+
+    // --------------------------------------------------------------------------------------------
+    // Recording
+
+    public void record(long micros)
+    {
+        if(micros < 0)
+            micros = 0;
+        buckets_.incrementAndGet(bucketIndex(micros));
+        count_.incrementAndGet();
+        sum_.addAndGet(micros);
+        long max;
+        while(micros > (max = max_.get()))
+        {
+            if(max_.compareAndSet(max, micros))
+                break;
+        }
+    }
+
+    public void reset()
+    {
+        for(int i = 0; i < BUCKET_COUNT; i++)
+            buckets_.set(i, 0);
+        count_.set(0);
+        sum_.set(0);
+        max_.set(0);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Reading
+
+    // Copies the current state into stats
+    public void snapshot(Stats stats)
+    {
+        long[] buckets = new long[BUCKET_COUNT];
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            buckets[i] = buckets_.get(i);
+            total += buckets[i];
+        }
+        stats.count = total;
+        stats.mean = (total > 0) ? (sum_.get() / total) : 0;
+        stats.max = max_.get();
+        stats.p50 = Math.min(percentile(buckets, total, 0.50), stats.max);
+        stats.p95 = Math.min(percentile(buckets, total, 0.95), stats.max);
+        stats.p99 = Math.min(percentile(buckets, total, 0.99), stats.max);
+    }
+
+    // Summary of a histogram at one point in time, all in microseconds
+    static public class Stats
+    {
+        public long count;
+        public long mean;
+        public long p50;
+        public long p95;
+        public long p99;
+        public long max;
+
+        @Override
+        public String toString()
+        {
+            return "n=" + count + " p50=" + p50 + " p95=" + p95 + " p99=" + p99 + " max=" + max + "us";
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    static int bucketIndex(long micros)
+    {
+        if(micros < LINEAR_BUCKETS)
+            return (int)micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros); // >= LINEAR_BITS
+        int sub = (int)(micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + ((exponent - LINEAR_BITS) * SUB_BUCKETS) + sub;
+    }
+
+    // Largest value that lands in bucket index
+    static long bucketUpperBound(int index)
+    {
+        if(index < LINEAR_BUCKETS)
+            return index;
+        int exponent = ((index - LINEAR_BUCKETS) / SUB_BUCKETS) + LINEAR_BITS;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + ((sub + 1) * width) - 1;
+    }
+
+    static private long percentile(long[] buckets, long total, double fraction)
+    {
+        if(total == 0)
+            return 0;
+        long rank = (long)Math.ceil(total * fraction);
+        long seen = 0;
+        for(int i = 0; i < buckets.length; i++)
+        {
+            seen += buckets[i];
+            if(seen >= rank)
+                return bucketUpperBound(i);
+        }
+        return bucketUpperBound(buckets.length - 1);
+    }
+}
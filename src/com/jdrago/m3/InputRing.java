@@ -0,0 +1,142 @@
+package com.jdrago.m3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Touch input from the UI thread to the sim thread, without allocating per event. The UI thread
+// offer()s into a fixed ring of primitive arrays; once per frame the sim thread drains it into a
+// batch buffer the script reads directly (see setInputBuffer/touchBatch in boot.coffee).
+//
+// Strictly single producer (UI thread) and single consumer (sim thread). Runs of consecutive
+// MOVEs are coalesced into the last one while draining, so a fast drag costs the script one
+// event per frame no matter how many the touchscreen delivered. DOWN and UP are never merged.
+//
+// Batch layout, in doubles:
+//
+//   0                   event count
+//   1 + (i * 4) + 0     type (DOWN, MOVE, UP)
+//   1 + (i * 4) + 1     x
+//   1 + (i * 4) + 2     y
+//   1 + (i * 4) + 3     event time, ms (SystemClock.uptimeMillis() timebase)
+public class InputRing
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static public final int DOWN = 0;
+    static public final int MOVE = 1;
+    static public final int UP = 2;
+
+    static public final int EVENT_SIZE = 4; // doubles per event in the batch
+    static private final int DOUBLE_SIZE_BYTES = 8;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private int mask_;
+    private int[] types_;
+    private double[] xs_;
+    private double[] ys_;
+    private long[] times_;
+
+    // Total events ever written / read. Each side only writes its own, and publishes it with
+    // lazySet after the slots it covers are filled in (or done with).
+    private AtomicLong written_ = new AtomicLong();
+    private AtomicLong read_ = new AtomicLong();
+    private long dropped_;
+
+    private ByteBuffer batchBytes_;
+    private DoubleBuffer batch_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // capacity is rounded up to a power of two
+    public InputRing(int capacity)
+    {
+        int size = 1;
+        while(size < capacity)
+            size <<= 1;
+        mask_ = size - 1;
+        types_ = new int[size];
+        xs_ = new double[size];
+        ys_ = new double[size];
+        times_ = new long[size];
+
+        batchBytes_ = ByteBuffer.allocateDirect((1 + (size * EVENT_SIZE)) * DOUBLE_SIZE_BYTES).order(ByteOrder.nativeOrder());
+        batch_ = batchBytes_.asDoubleBuffer();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Producer (UI thread)
+
+    // Returns false if the ring is full and the event was dropped. That only happens if the sim
+    // thread hasn't drained for a whole ring's worth of events; a dropped MOVE is harmless since
+    // a later one supersedes it.
+    public boolean offer(int type, double x, double y, long timeMillis)
+    {
+        long written = written_.get();
+        if(written - read_.get() > mask_)
+        {
+            dropped_++;
+            return false;
+        }
+
+        int slot = (int)written & mask_;
+        types_[slot] = type;
+        xs_[slot] = x;
+        ys_[slot] = y;
+        times_[slot] = timeMillis;
+        written_.lazySet(written + 1);
+        return true;
+    }
+
+    // Events dropped because the ring was full. Producer side only.
+    public long dropped()
+    {
+        return dropped_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Consumer (sim thread)
+
+    // Moves everything offered so far into the batch buffer, coalescing MOVE runs, and returns
+    // the number of events in the batch (also stored in its first element)
+    public int drain()
+    {
+        long read = read_.get();
+        long written = written_.get();
+        int count = 0;
+        int lastType = -1;
+        for(; read < written; read++)
+        {
+            int slot = (int)read & mask_;
+            int type = types_[slot];
+            if((type != MOVE) || (lastType != MOVE))
+                count++;
+            int base = 1 + ((count - 1) * EVENT_SIZE);
+            batch_.put(base + 0, type);
+            batch_.put(base + 1, xs_[slot]);
+            batch_.put(base + 2, ys_[slot]);
+            batch_.put(base + 3, times_[slot]);
+            lastType = type;
+        }
+        read_.lazySet(read);
+        batch_.put(0, count);
+        return count;
+    }
+
+    // The batch buffer's storage, for sharing with the script
+    public ByteBuffer batchBytes()
+    {
+        return batchBytes_;
+    }
+
+    // Size of the batch buffer, in doubles
+    public int batchLength()
+    {
+        return batch_.capacity();
+    }
+}
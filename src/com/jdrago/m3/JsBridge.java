@@ -0,0 +1,231 @@
+package com.jdrago.m3;
+
+import com.eclipsesource.v8.Releasable;
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8ArrayBuffer;
+import com.eclipsesource.v8.V8Function;
+import com.eclipsesource.v8.V8Object;
+import com.eclipsesource.v8.V8TypedArray;
+import com.eclipsesource.v8.V8Value;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+
+// Every call from Java into the script goes through here. The point is to keep the per-frame
+// calls (update, render, touchBatch) free of V8 allocations:
+//
+// * Functions are looked up once, by name, and called through the cached handle after that.
+// * Numeric arguments are written into a Float64Array shared with the script (see setBridgeArgs
+//   in boot.coffee) instead of into a fresh V8Array per call, so a call with args() set up
+//   creates no handles at all.
+// * Anything the bridge does have to create (parameter arrays for one-off calls like load and
+//   save, typed array views) is released before the call returns.
+//
+// It also keeps count: bridge calls and V8 handles created in the current frame, and live handles
+// in the whole runtime, so a leak shows up as a number that keeps going up. Use it only from the
+// thread that holds the runtime's locker.
+public class JsBridge
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final int DOUBLE_SIZE_BYTES = 8;
+
+    // --------------------------------------------------------------------------------------------
+    // Function
+
+    // A cached handle to a global script function
+    public class Function
+    {
+        private String name_;
+        private V8Function function_;
+
+        private Function(String name, V8Function function)
+        {
+            name_ = name;
+            function_ = function;
+        }
+
+        public String name()
+        {
+            return name_;
+        }
+
+        // Arguments (if any) go in args() beforehand
+        public void callVoid()
+        {
+            release(call(null));
+        }
+
+        public boolean callBoolean()
+        {
+            Object result = call(null);
+            release(result);
+            return Boolean.TRUE.equals(result);
+        }
+
+        public int callInteger()
+        {
+            Object result = call(null);
+            if(result instanceof Number)
+                return ((Number)result).intValue();
+            release(result);
+            throw new RuntimeException(name_ + "() didn't return a number");
+        }
+
+        // One-off call with real arguments (strings, V8 values); allocates a parameter array,
+        // so keep it out of the per-frame path. Returns the result if it's a primitive or
+        // string; an object result is released and null returned.
+        public Object callWith(Object... args)
+        {
+            V8Array parameters = new V8Array(v8_);
+            created_++;
+            try
+            {
+                for(Object arg : args)
+                    parameters.push(arg);
+                Object result = call(parameters);
+                if(result instanceof Releasable)
+                {
+                    release(result);
+                    return null;
+                }
+                return result;
+            }
+            finally
+            {
+                parameters.release();
+            }
+        }
+
+        private Object call(V8Array parameters)
+        {
+            calls_++;
+            return function_.call(null, parameters);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private V8 v8_;
+    private ArrayList<Function> functions_ = new ArrayList<Function>();
+    private ByteBuffer argBytes_;
+    private DoubleBuffer args_;
+
+    private int calls_;
+    private int created_;
+    private int lastFrameCalls_;
+    private int lastFrameCreated_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // Shares argSlots doubles of argument space with the script through setBridgeArgs()
+    public JsBridge(V8 v8, int argSlots)
+    {
+        v8_ = v8;
+        argBytes_ = ByteBuffer.allocateDirect(argSlots * DOUBLE_SIZE_BYTES).order(ByteOrder.nativeOrder());
+        args_ = argBytes_.asDoubleBuffer();
+        shareBuffer(function("setBridgeArgs"), argBytes_, V8Value.FLOAT_64_ARRAY, argSlots);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Calls
+
+    // Looks up a global function once; keep the result rather than calling this per frame
+    public Function function(String name)
+    {
+        for(Function function : functions_)
+        {
+            if(function.name_.equals(name))
+                return function;
+        }
+
+        V8Object object = v8_.getObject(name);
+        created_++;
+        if(!(object instanceof V8Function))
+        {
+            object.release();
+            throw new RuntimeException("Script has no function " + name + "()");
+        }
+        Function function = new Function(name, (V8Function)object);
+        functions_.add(function);
+        return function;
+    }
+
+    // Numeric argument slots for the next call: index 0 is the first argument
+    public DoubleBuffer args()
+    {
+        return args_;
+    }
+
+    // Passes a typed array view of buffer (of the given V8Value array type and element count) to
+    // function, releasing the views again once the script has taken its own reference
+    public void shareBuffer(Function function, ByteBuffer buffer, int arrayType, int length)
+    {
+        V8ArrayBuffer arrayBuffer = new V8ArrayBuffer(v8_, buffer);
+        V8TypedArray typedArray = new V8TypedArray(v8_, arrayBuffer, arrayType, 0, length);
+        created_ += 2;
+        try
+        {
+            function.callWith(typedArray);
+        }
+        finally
+        {
+            typedArray.release();
+            arrayBuffer.release();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Accounting
+
+    // Call once per frame; the counts so far become the last frame's
+    public void endFrame()
+    {
+        lastFrameCalls_ = calls_;
+        lastFrameCreated_ = created_;
+        calls_ = 0;
+        created_ = 0;
+    }
+
+    // Calls into the script during the last frame
+    public int lastFrameCalls()
+    {
+        return lastFrameCalls_;
+    }
+
+    // V8 handles the bridge created during the last frame (all of them released again). Zero in
+    // steady state.
+    public int lastFrameCreated()
+    {
+        return lastFrameCreated_;
+    }
+
+    // Handles currently alive in the whole runtime, the bridge's cached functions included
+    public long liveHandles()
+    {
+        return v8_.getObjectReferenceCount();
+    }
+
+    // Releases the cached function handles. Call before releasing the runtime.
+    public void release()
+    {
+        for(Function function : functions_)
+            function.function_.release();
+        functions_.clear();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    static private void release(Object result)
+    {
+        if(result instanceof Releasable)
+            ((Releasable)result).release();
+    }
+}
@@ -1,21 +1,13 @@
 package com.jdrago.m3;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
 import android.graphics.Point;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.Display;
 import android.view.View;
 import android.view.Window;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.IOException;
-
 public class M3Activity extends Activity
 {
     private static final String TAG = "M3";
@@ -24,12 +16,12 @@ public class M3Activity extends Activity
     Point displaySize_;
     private double coordinateScale_;
     boolean paused_;
-    Handler uiHandler_;
-    Runnable mainLoop_;
+    FrameScheduler scheduler_;
 
     @Override
     public void onCreate(Bundle savedInstanceState)
     {
+        long coldStart = System.nanoTime();
         super.onCreate(savedInstanceState);
         coordinateScale_ = 1;
         paused_ = true;
@@ -39,35 +31,32 @@ public class M3Activity extends Activity
         display.getRealSize(displaySize_);
 
         Log.d(TAG, "M3Activity::onCreate(): displaySize: "+displaySize_.x+","+displaySize_.y);
-        view_ = new M3View(getApplication(), this, displaySize_, loadScript(R.raw.script));
+        AssetPack pack = AssetPack.open(this, R.raw.assets);
+        long decodeStart = System.nanoTime();
+        String script = pack.string(AssetPack.SCRIPT);
+        Log.d(TAG, "Script: " + script.length() + " chars decoded in " + ((System.nanoTime() - decodeStart) / 1000) + " us");
+        view_ = new M3View(getApplication(), this, displaySize_, pack, script);
         setContentView(view_);
+        Log.d(TAG, "Cold start: " + ((System.nanoTime() - coldStart) / 1000000) + " ms to script started");
         // immerse();
 
-        // The main loop is implemented as a Runnable that either runs once a second when idling,
-        // or runs at M3Renderer.MAX_FPS if in the middle of an animation or a drag.
-        uiHandler_ = new Handler(Looper.getMainLooper());
-        mainLoop_ = new Runnable() {
+        // The main loop is driven by vsync: each frame runs update and render, and another is
+        // only requested while something is still moving (an animation or a drag). When the
+        // game is idle no frames are scheduled at all until input arrives.
+        scheduler_ = new FrameScheduler(new FrameScheduler.Client() {
             @Override
-            public void run() {
+            public void doFrame(long frameTimeNanos) {
                 if (isFinishing()) {
                     return;
                 }
                 if(paused_)
                     return;
 
-                // Update and render happen in this call
-                view_.requestRender();
-
-                if(view_.renderer().needsRender())
-                {
-                    uiHandler_.postDelayed(this, M3Renderer.MIN_MS_PER_FRAME);
-                }
-                else
-                {
-                    uiHandler_.postDelayed(this, 1000);
-                }
+                // Update and render happen on the renderer's own threads; the renderer calls
+                // kick() again for as long as it needs frames
+                view_.renderer().requestFrame(frameTimeNanos);
             }
-        };
+        }, display.getRefreshRate(), M3Renderer.TARGET_FPS);
     }
 
     @Override
@@ -95,16 +84,12 @@ public class M3Activity extends Activity
         super.onPause();
         Log.d(TAG, "onPause");
 
-        String state = view_.renderer().jsSave();
-        Log.d(TAG, "save state: "+state.length()+" bytes");
-        Log.d(TAG, "save state: "+state);
-
-        SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
-        editor.putString("state", state);
-        editor.apply();
+        // Snapshotted on the sim thread and written in the background (see StateStore)
+        view_.renderer().saveState();
 
         view_.onPause();
         paused_ = true;
+        scheduler_.stop();
     }
 
     @Override
@@ -113,18 +98,24 @@ public class M3Activity extends Activity
         super.onResume();
         Log.d(TAG, "onResume");
 
-        String state = getPreferences(MODE_PRIVATE).getString("state", "");
-        Log.d(TAG, "load state: "+state.length()+" bytes");
-        Log.d(TAG, "load state: "+state);
-
-        view_.renderer().jsLoad(state);
-
+        // Nothing to restore: the game is still running in this process. A cold start restores
+        // the save itself, in the background (see M3Renderer).
         view_.onResume();
         paused_ = false;
+        scheduler_.start();
         immerse();
         kick();
     }
 
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        Log.d(TAG, "onDestroy");
+        scheduler_.stop();
+        view_.renderer().shutdown();
+    }
+
     public void onBackPressed()
     {
         // This stops the back button from destroying this Activity
@@ -133,9 +124,8 @@ public class M3Activity extends Activity
 
     protected void kick()
     {
-        // Makes the mainLoop_ runnable immediately fire (instead of waiting up to a second for it)
-        uiHandler_.removeCallbacks(mainLoop_);
-        uiHandler_.post(mainLoop_);
+        // Schedules a frame on the next vsync
+        scheduler_.requestFrame();
     }
 
     void immerse()
@@ -150,47 +140,12 @@ public class M3Activity extends Activity
             | View.INVISIBLE);
     }
 
-    public void touchDown(double x, double y)
+    // type is one of InputRing's DOWN/MOVE/UP, timeMillis the MotionEvent's event time
+    public void touch(int type, double x, double y, long timeMillis)
     {
         x *= coordinateScale_;
         y *= coordinateScale_;
-        view_.renderer().jsTouchDown(x, y);
+        view_.renderer().touch(type, x, y, timeMillis);
         kick();
     }
-
-    public void touchMove(double x, double y)
-    {
-        x *= coordinateScale_;
-        y *= coordinateScale_;
-        view_.renderer().jsTouchMove(x, y);
-        kick();
-    }
-
-    public void touchUp(double x, double y)
-    {
-        x *= coordinateScale_;
-        y *= coordinateScale_;
-        view_.renderer().jsTouchUp(x, y);
-        kick();
-    }
-
-    public String loadScript(int resId)
-    {
-        InputStream inputStream = getApplication().getResources().openRawResource(resId);
-
-        InputStreamReader inputreader = new InputStreamReader(inputStream);
-        BufferedReader buffreader = new BufferedReader(inputreader);
-        String line;
-        StringBuilder text = new StringBuilder();
-
-        try {
-            while (( line = buffreader.readLine()) != null) {
-                text.append(line);
-                text.append('\n');
-            }
-        } catch (IOException e) {
-            return null;
-        }
-        return text.toString();
-    }
 }
@@ -3,106 +3,66 @@ package com.jdrago.m3;
 import com.jdrago.m3.GLTextureView;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Point;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Trace;
 import android.util.Log;
 
 import com.eclipsesource.v8.V8;
-import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8Value;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 import java.lang.Thread;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.HashMap;
 
 import javax.microedition.khronos.opengles.GL10;
 
-public class M3Renderer implements GLTextureView.Renderer
+public class M3Renderer implements GLTextureView.Renderer, SpriteBatch.Sink
 {
     // --------------------------------------------------------------------------------------------
     // Constants
 
     static private final String TAG = "M3";
 
-    static private final int MAX_FPS = 30;
-    static public  final int MIN_MS_PER_FRAME = 1000 / MAX_FPS;
+    static public  final int TARGET_FPS = 60;
+    static private final int SWAP_INTERVAL = 1;
+    static private final double MAX_FRAME_DT_MS = 1000;
     static private final int FRAME_COUNTER_INTERVAL_MS = 10 * 1000;
-    static private final int FAST_FRAMES_AFTER_UPDATED = 6;
-
-    private static final int FLOAT_SIZE_BYTES = 4;
-    private static final int INT_SIZE_BYTES = 4;
-    private static final int TRIANGLE_VERTICES_DATA_STRIDE_BYTES = 5 * FLOAT_SIZE_BYTES;
-    private static final int TRIANGLE_VERTICES_DATA_POS_OFFSET = 0;
-    private static final int TRIANGLE_VERTICES_DATA_UV_OFFSET = 3;
-    private static final int[] QUAD_INDICES = {0, 1, 2, 2, 3, 0};
-    private static final int TEXTURE_COUNT = 3;
-
-    private static final String VERTEX_SHADER =
-            "uniform mat4 uMVPMatrix;\n" +
-                    "attribute vec4 aPosition;\n" +
-                    "attribute vec2 aTextureCoord;\n" +
-                    "uniform vec4 u_color;\n" +
-                    "varying vec2 vTextureCoord;\n" +
-                    "void main() {\n" +
-                    "  gl_Position = uMVPMatrix * aPosition;\n" +
-                    "  vTextureCoord = aTextureCoord;\n" +
-                    "}\n";
-
-    private static final String FRAGMENT_SHADER =
-            "precision mediump float;\n" +
-                    "varying vec2 vTextureCoord;\n" +
-                    "uniform sampler2D sTexture;\n" +
-                    "uniform vec4 u_color;\n" +
-                    "void main() {\n" +
-                    "vec4 t = texture2D(sTexture, vTextureCoord);" +
-                    "gl_FragColor.rgba = u_color.rgba * t.rgba;\n" +
-                    "}\n";
-
-
-    // --------------------------------------------------------------------------------------------
-    // Texture
 
-    public class Texture
-    {
-        int id;
-        double width;
-        double height;
-    };
-
-    // --------------------------------------------------------------------------------------------
-    // Touch events
+    // Pipelined: the sim thread runs the script (update + render) for frame N+1 while the GL
+    // thread submits frame N. Otherwise both run back to back on a single background thread.
+    static public  final boolean PIPELINED = true;
 
-    public enum TouchType
-    {
-        DOWN,
-        MOVE,
-        UP
-    }
+    // Fixed step: the script is updated in steps of exactly SIM_STEP_MS (at most
+    // MAX_SIM_STEPS_PER_FRAME per frame, the rest of a long frame is dropped), and each frame
+    // draws its commands interpolated between the last two steps. Otherwise update() gets the
+    // raw time between vsyncs.
+    static public  final boolean FIXED_STEP = true;
+    static public  final int SIM_RATE_HZ = 30;
+    static private final double SIM_STEP_MS = 1000.0 / SIM_RATE_HZ;
+    static private final int MAX_SIM_STEPS_PER_FRAME = 4;
 
-    public class Touch
-    {
-        public Touch(TouchType atype, double ax, double ay)
-        {
-            type = atype;
-            x = ax;
-            y = ay;
-        }
-        public TouchType type;
-        public double x;
-        public double y;
-    };
+    private static final int INITIAL_COMMAND_CAPACITY = 1024; // quads
+    private static final int INPUT_RING_CAPACITY = 256; // events
+    private static final int BRIDGE_ARG_SLOTS = 4;
+    private static final String SAVE_FILE_NAME = "game.m3s";
 
     // --------------------------------------------------------------------------------------------
     // Member variables
@@ -111,121 +71,463 @@ public class M3Renderer implements GLTextureView.Renderer
     Context context_;
     private M3Activity activity_;
     private M3View view_;
+    private AssetPack pack_;
     String script_;
     private int width_;
     private int height_;
 
-    // Javascript engine internals
+    // Javascript engine internals (sim thread only, after construction)
     private V8 v8_;
-    ConcurrentLinkedQueue<Touch> inputQueue_;
-    private long lastTime_;
+    private JsBridge bridge_;
+    private JsBridge.Function updateFn_;
+    private JsBridge.Function renderFn_;
+    private JsBridge.Function touchBatchFn_;
+    private long bridgeCounterLastTime_;
+    private InputRing input_;
+    private RulesBridge rules_;
+    private IntBuffer stateBuffer_;
+    private StateStore stateStore_;
+    private AtomicReference<Snapshot> pendingRestore_ = new AtomicReference<Snapshot>();
+    private boolean stateChanged_;
+    private long lastFrameTimeNanos_;
+    private boolean needsFrame_;
+    private CommandBuffer commandBuffer_;
+
+    // Fixed step state (sim thread only): commands from the previous and latest steps, and the
+    // blend of the two that actually gets published
+    private double simAccumulatorMs_;
+    private boolean simIdle_;
+    private CommandBuffer prevStep_;
+    private CommandBuffer lastStep_;
+    private CommandBuffer interpolated_;
+
+    // Threads. The sim thread owns the V8 runtime; the GL thread binds the context to draw. In
+    // serial mode they are one and the same.
+    private HandlerThread simThread_;
+    private HandlerThread glThread_;
+    private Handler simHandler_;
+    private Handler glHandler_;
+    private Handler uiHandler_;
+    private Runnable simFrame_;
+    private Runnable glFrame_;
+    private Runnable requestNextFrame_;
+    private AtomicBoolean simFrameQueued_ = new AtomicBoolean();
+    private AtomicBoolean glFrameQueued_ = new AtomicBoolean();
+    private volatile long frameTimeNanos_;
+    private CommandExchange exchange_;
 
     // Render internals
     private Texture textures_[];
+    private AsyncTextureLoader textureLoader_;
     private float[] viewProjMatrix_ = new float[16];
     private float[] projMatrix_ = new float[16];
-    private float[] modelMatrix_ = new float[16];
     private float[] viewMatrix_ = new float[16];
-    private FloatBuffer verts_;
-    private IntBuffer indices_;
-    private int shaderProgram_;
-    private int viewProjMatrixHandle_;
-    private int posHandle_;
-    private int texHandle_;
-    private int vertColorHandle_;
-    private long frameCounter_;
+    private SpriteBatch spriteBatch_;
+    private GLES20Backend gl_;
+    private GLBackend backend_;
+    private Texture boundTexture_;
+    private FrameMetrics metrics_ = new FrameMetrics();
     private long frameCounterLastTime_;
-    private int fastRenderFrames_;
-    private double[] renderData_;
-    private int renderDataSize_;
+    private long glLastTimeNanos_;
+    private long skippedFrameCount_;
+    private long drawNanos_;
+    private long drawEndNanos_;
+    private boolean drawn_;
+    private long lastFingerprint_;
+    private boolean forceDraw_;
 
     // --------------------------------------------------------------------------------------------
     // Constructor
 
-    public M3Renderer(Context context, M3Activity activity, M3View view, Point displaySize, String script)
+    public M3Renderer(Context context, M3Activity activity, M3View view, Point displaySize, AssetPack pack, String script)
     {
         context_ = context;
         activity_ = activity;
         view_ = view;
+        pack_ = pack;
         script_ = script;
         width_ = displaySize.x;
         height_ = displaySize.y;
 
-        inputQueue_ = new ConcurrentLinkedQueue<Touch>();
-        lastTime_ = System.currentTimeMillis();
+        input_ = new InputRing(INPUT_RING_CAPACITY);
+
+        commandBuffer_ = new CommandBuffer(INITIAL_COMMAND_CAPACITY);
+        prevStep_ = new CommandBuffer(INITIAL_COMMAND_CAPACITY);
+        lastStep_ = new CommandBuffer(INITIAL_COMMAND_CAPACITY);
+        interpolated_ = new CommandBuffer(INITIAL_COMMAND_CAPACITY);
+        simIdle_ = true;
 
         initializeV8(context_, script_);
+        jsSetRulesBuffer();
+        long startupStart = System.nanoTime();
         jsStartup();
-
-        verts_ = ByteBuffer.allocateDirect(20 * FLOAT_SIZE_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
-        indices_ = ByteBuffer.allocateDirect(QUAD_INDICES.length * INT_SIZE_BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
-        indices_.put(QUAD_INDICES).position(0);
-        frameCounter_ = 0;
+        Log.d(TAG, "startup(): "+((System.nanoTime() - startupStart) / 1000000)+" ms");
+        jsSetCommandBuffer();
+        jsSetInputBuffer();
+        jsSetStateBuffer();
+
+        spriteBatch_ = new SpriteBatch();
+        gl_ = new GLES20Backend();
+        backend_ = gl_;
+        exchange_ = new CommandExchange(INITIAL_COMMAND_CAPACITY);
         frameCounterLastTime_ = FRAME_COUNTER_INTERVAL_MS;
-        renderDataSize_ = 0;
-        fastRenderFrames_ = 1;
+        needsFrame_ = true;
+
+        startThreads();
+
+        // The save is read in the background and applied by the first frame after it arrives;
+        // the game starts (and can be drawn) without waiting for it
+        stateStore_ = new StateStore(new File(context_.getFilesDir(), SAVE_FILE_NAME));
+        stateStore_.restore(new StateStore.Listener() {
+            @Override
+            public void onRestored(Snapshot snapshot) {
+                if(snapshot == null)
+                    return;
+                pendingRestore_.set(snapshot);
+                uiHandler_.post(requestNextFrame_);
+            }
+        });
+
+        Log.d(TAG, "Renderer TargetFPS: "+TARGET_FPS+", SwapInterval: "+SWAP_INTERVAL+", Pipelined: "+PIPELINED+", SimRate: "+(FIXED_STEP ? (SIM_RATE_HZ+"Hz fixed") : "variable"));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Threads
+
+    private void startThreads()
+    {
+        uiHandler_ = new Handler(Looper.getMainLooper());
+        requestNextFrame_ = new Runnable() {
+            @Override
+            public void run() {
+                activity_.kick();
+            }
+        };
+
+        simThread_ = new HandlerThread("M3 sim");
+        simThread_.start();
+        simHandler_ = new Handler(simThread_.getLooper());
+        if(PIPELINED)
+        {
+            glThread_ = new HandlerThread("M3 GL");
+            glThread_.start();
+            glHandler_ = new Handler(glThread_.getLooper());
+        }
+        else
+        {
+            glThread_ = simThread_;
+            glHandler_ = simHandler_;
+        }
 
-        Log.d(TAG, "Renderer MaxFPS: "+MAX_FPS+", MinMSPerFrame: "+MIN_MS_PER_FRAME);
+        simFrame_ = new Runnable() {
+            @Override
+            public void run() {
+                simFrameQueued_.set(false);
+                simulateFrame();
+            }
+        };
+        glFrame_ = new Runnable() {
+            @Override
+            public void run() {
+                glFrameQueued_.set(false);
+                drawn_ = false;
+                view_.requestRender(); // calls onDrawFrame; the context is already current here
+                if(drawn_)
+                    metrics_.endPhase(FrameMetrics.SWAP, drawEndNanos_); // and swaps if it drew
+            }
+        };
+
+        // Hand the runtime over to the sim thread for good
+        v8_.getLocker().release();
+        simHandler_.post(new Runnable() {
+            @Override
+            public void run() {
+                v8_.getLocker().acquire();
+            }
+        });
+    }
+
+    // The GL thread, which owns the EGL context (see M3View)
+    public Handler glHandler()
+    {
+        return glHandler_;
+    }
+
+    // Releases the GL context, stops both threads and releases the runtime. Call when the activity
+    // is destroyed.
+    public void shutdown()
+    {
+        // The view only lets go of its surface and context after onDestroy returns, by which time
+        // the GL thread is gone; release them on it now, while it can still run anything
+        view_.releaseEGLContext();
+
+        runOnSimThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Log.d(TAG, "Releasing V8 with "+bridge_.liveHandles()+" live handle(s)");
+                bridge_.release();
+                v8_.release();
+                rules_.release();
+                stateStore_.shutdown();
+                return null;
+            }
+        });
+        simThread_.quit();
+        if(glThread_ != simThread_)
+            glThread_.quit();
+    }
+
+    // Runs task on the sim thread (which owns V8) and waits for its result
+    private <T> T runOnSimThread(Callable<T> task)
+    {
+        if(Looper.myLooper() == simThread_.getLooper())
+        {
+            try
+            {
+                return task.call();
+            }
+            catch(Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        FutureTask<T> future = new FutureTask<T>(task);
+        simHandler_.post(future);
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
     }
 
-    // called after surface creation, but up top as it lists all available textures
+    // called after surface creation, but up top as it lists all available textures. The atlas
+    // pages (and the manifest listing them) are generated from art/ by 'cake atlas' and read from
+    // the asset pack; the script addresses them by page index. Each page starts out as a
+    // placeholder and is swapped for the real thing once the background loader has it resident.
     public void loadTextures()
     {
-        textures_ = new Texture[TEXTURE_COUNT];
-        textures_[0] = loadPNG(R.raw.gems);
-        textures_[1] = loadPNG(R.raw.tiles);
-        textures_[2] = loadPNG(R.raw.darkforest);
+        String[] names;
+        try
+        {
+            JSONArray pages = new JSONObject(pack_.string(AssetPack.ATLAS_MANIFEST)).getJSONArray("pages");
+            names = new String[pages.length()];
+            textures_ = new Texture[pages.length()];
+            for(int i = 0; i < pages.length(); i++)
+            {
+                JSONObject page = pages.getJSONObject(i);
+                names[i] = page.getString("name");
+                textures_[i] = backend_.createPlaceholder(page.getDouble("width"), page.getDouble("height"));
+            }
+        }
+        catch(JSONException e)
+        {
+            throw new RuntimeException("Bad atlas manifest", e);
+        }
+        backend_.checkError("createPlaceholder");
+
+        // A new loader per context: its worker shares with whichever context is current, and the
+        // view makes a new EGLManager whenever it doesn't preserve one
+        if(textureLoader_ != null)
+            textureLoader_.cancel();
+        textureLoader_ = new AsyncTextureLoader(view_.getEGLManager(), pack_);
+        textureLoader_.start(names);
     }
 
     // --------------------------------------------------------------------------------------------
     // Main loop
 
-    public void onDrawFrame(GL10 glUnused)
+    // Called on the UI thread once per scheduled vsync frame: queues update + render on the sim
+    // thread. If the sim thread is still busy with an earlier frame, this one folds into it.
+    public void requestFrame(long frameTimeNanos)
     {
-        // Cap our framerate to MAX_FPS by measuring the time it took
-        // to get back in this function and taking a break before rendering again
-        long now = System.currentTimeMillis();
-        long dt = now - lastTime_;
+        frameTimeNanos_ = frameTimeNanos;
+        if(simFrameQueued_.compareAndSet(false, true))
+            simHandler_.post(simFrame_);
+    }
 
-        // Comment out this block to disable frame limiting
+    // Sim thread: runs the script for one frame and publishes its commands to the GL thread
+    private void simulateFrame()
+    {
+        // Frame time comes from the vsync that scheduled this frame (see FrameScheduler), so dt
+        // is measured between vsyncs rather than between whenever we happened to get here.
+        // Clamped so that the first frame after a long idle doesn't leap forward.
+        long now = (frameTimeNanos_ != 0) ? frameTimeNanos_ : System.nanoTime();
+        double dt = (lastFrameTimeNanos_ != 0) ? (now - lastFrameTimeNanos_) / 1000000.0 : 0;
+        if(dt > MAX_FRAME_DT_MS)
+            dt = MAX_FRAME_DT_MS;
+        lastFrameTimeNanos_ = now;
+
+        Snapshot restored = pendingRestore_.getAndSet(null);
+        if(restored != null)
+            restore(restored);
+
+        CommandBuffer frame;
+        if(FIXED_STEP)
+            frame = simulateFixedSteps(dt);
+        else
         {
-            Trace.beginSection("wait to limit FPS");
-            if(dt < MIN_MS_PER_FRAME)
+            needsFrame_ = false;
+            jsUpdate(dt, true);
+            jsRender();
+            frame = commandBuffer_;
+        }
+        exchange_.publish(frame);
+        endBridgeFrame(dt);
+
+        if(glFrameQueued_.compareAndSet(false, true))
+            glHandler_.post(glFrame_);
+
+        // Something is still in motion; ask the UI thread's scheduler for another vsync
+        if(needsFrame_)
+            uiHandler_.post(requestNextFrame_);
+    }
+
+    // Rolls the bridge's per-frame counts over, and now and then logs them. Steady-state frames
+    // should create no V8 handles at all; a live handle count that keeps climbing is a leak.
+    private void endBridgeFrame(double dt)
+    {
+        bridge_.endFrame();
+        bridgeCounterLastTime_ -= (long)dt;
+        if(bridgeCounterLastTime_ <= 0)
+        {
+            Log.d(TAG, "JS bridge: "+bridge_.lastFrameCalls()+" call(s) and "+bridge_.lastFrameCreated()+" handle(s) created last frame, "+bridge_.liveHandles()+" live handle(s)");
+            bridgeCounterLastTime_ = FRAME_COUNTER_INTERVAL_MS;
+        }
+    }
+
+    // Advances the script by whole SIM_STEP_MS steps and returns the commands to draw, blended
+    // between the last two steps by how far into the next step this frame is
+    private CommandBuffer simulateFixedSteps(double dt)
+    {
+        if(simIdle_)
+        {
+            // Nothing has moved since the last frame (or this is the first): step straight away
+            // so input is seen immediately, instead of after the idle time is caught up on
+            simAccumulatorMs_ = SIM_STEP_MS;
+        }
+        else
+        {
+            simAccumulatorMs_ += dt;
+        }
+
+        int steps = (int)(simAccumulatorMs_ / SIM_STEP_MS);
+        if(steps > MAX_SIM_STEPS_PER_FRAME)
+        {
+            // Too far behind to catch up without stalling further; drop the remainder
+            steps = MAX_SIM_STEPS_PER_FRAME;
+            simAccumulatorMs_ = steps * SIM_STEP_MS;
+        }
+
+        // Input is drained before the first step only. touchBatch hit-tests against the zones the
+        // last render() built, and on a catch-up frame (3+ steps) the steps in between don't
+        // render; a touch handed to one of those steps would be tested against zones that no
+        // longer match what has moved since. Before the first step the zones are still those of
+        // the frame on screen, which is what the player touched.
+        boolean moved = false;
+        for(int i = 0; i < steps; i++)
+        {
+            needsFrame_ = false;
+            jsUpdate(SIM_STEP_MS, i == 0);
+            moved |= needsFrame_;
+            simAccumulatorMs_ -= SIM_STEP_MS;
+
+            // Only the last two steps are ever blended, so only they need rendering
+            if((i >= steps - 2) || simIdle_)
             {
-               try
-               {
-                   Thread.sleep(MIN_MS_PER_FRAME - dt);
-               }
-               catch(InterruptedException e)
-               {
-                   Thread.currentThread().interrupt();
-               }
+                jsRender();
+                CommandBuffer recycled = prevStep_;
+                prevStep_ = lastStep_;
+                lastStep_ = recycled;
+                lastStep_.copyFrom(commandBuffer_);
+                if(simIdle_)
+                    prevStep_.copyFrom(commandBuffer_); // nothing earlier to blend from
             }
-
-            // post-sleep, update now and dt again
-            now = System.currentTimeMillis();
-            dt = now - lastTime_;
-            Trace.endSection();
         }
 
-        lastTime_ = now;
+        // Keep frames coming while anything moves, or while the blend hasn't reached the last
+        // step yet
+        boolean settled = !moved && (prevStep_.fingerprint() == lastStep_.fingerprint());
+        needsFrame_ = !settled;
+        simIdle_ = settled;
+
+        float alpha = (float)(simAccumulatorMs_ / SIM_STEP_MS);
+        CommandInterpolator.interpolate(prevStep_, lastStep_, alpha, interpolated_);
+        return interpolated_;
+    }
+
+    // GL thread: draws the newest frame the sim thread has published
+    public boolean onDrawFrame(GL10 glUnused)
+    {
+        long now = System.nanoTime();
+        long dt = (glLastTimeNanos_ != 0) ? (now - glLastTimeNanos_) / 1000000 : 0;
+        glLastTimeNanos_ = now;
 
-        frameCounter_++;
         frameCounterLastTime_ -= dt;
         if(frameCounterLastTime_ <= 0)
         {
-            if(frameCounter_ > 2 * (FRAME_COUNTER_INTERVAL_MS / 1000))
-                Log.d(TAG, "Rendered "+frameCounter_+" frames in last "+(FRAME_COUNTER_INTERVAL_MS + frameCounterLastTime_) + "ms");
-
-            frameCounter_ = 0;
+            dumpMetrics();
             frameCounterLastTime_ = FRAME_COUNTER_INTERVAL_MS;
         }
 
-        jsUpdate((double)dt);
+        exchange_.acquire();
+        CommandBuffer frame = exchange_.current();
+
+        // Keep frames coming until every texture is resident
+        if(textureLoader_.pending())
+            uiHandler_.post(requestNextFrame_);
+
+        // If this frame's commands are identical to what's already on screen (and nothing else
+        // that affects the image changed), skip GL entirely: no clear, no draws, no swap.
+        boolean texturesChanged = textureLoader_.poll(textures_, backend_);
+        long fingerprint = frame.fingerprint();
+        if(!texturesChanged && !forceDraw_ && (fingerprint == lastFingerprint_))
+        {
+            metrics_.count(FrameMetrics.FRAMES_SKIPPED, 1);
+            skippedFrameCount_++;
+            return false;
+        }
+        lastFingerprint_ = fingerprint;
+        forceDraw_ = false;
+
+        submitCommands(frame);
+        metrics_.count(FrameMetrics.FRAMES_DRAWN, 1);
+        drawEndNanos_ = System.nanoTime();
+        drawn_ = true;
+        return true;
+    }
+
+    // Frame timings and counts; see FrameMetrics. Safe to snapshot from any thread.
+    public FrameMetrics metrics()
+    {
+        return metrics_;
+    }
 
-        renderBegin(0.0f, 0.25f, 0.0f);
-        jsRender();
-        renderEnd();
+    // Logs the last interval's metrics and starts a new one
+    private void dumpMetrics()
+    {
+        FrameMetrics.Snapshot snapshot = metrics_.snapshot();
+        metrics_.reset();
+        if(snapshot.counter(FrameMetrics.FRAMES_DRAWN) + snapshot.counter(FrameMetrics.FRAMES_SKIPPED) <= 2 * (FRAME_COUNTER_INTERVAL_MS / 1000))
+            return; // mostly idle, nothing worth reading
+
+        for(String line : snapshot.lines())
+            Log.d(TAG, "Metrics " + line);
+        Log.d(TAG, "Metrics "+gl_.gpuBuffers().bytesUploadedLastFrame()+" vertex bytes last frame");
+    }
+
+    // Total frames whose GL submission and swap were skipped because nothing changed
+    public long skippedFrameCount()
+    {
+        return skippedFrameCount_;
     }
 
     // --------------------------------------------------------------------------------------------
@@ -235,222 +537,165 @@ public class M3Renderer implements GLTextureView.Renderer
     {
         Log.d(TAG, "Loading script, "+script.length()+" chars");
 
+        long start = System.nanoTime();
         v8_ = V8.createV8Runtime(null, context.getApplicationInfo().dataDir);
         v8_.registerJavaMethod(this, "nativeLog", "nativeLog", new Class<?>[] { String.class });
+        v8_.registerJavaMethod(this, "nativeStateChanged", "nativeStateChanged", new Class<?>[] {});
+        rules_ = new RulesBridge();
+        v8_.registerJavaMethod(rules_, "score", "nativeRulesScore", new Class<?>[] {});
+        v8_.registerJavaMethod(rules_, "hint", "nativeRulesHint", new Class<?>[] { Integer.TYPE });
+        v8_.registerJavaMethod(rules_, "hintResult", "nativeRulesHintResult", new Class<?>[] {});
+        long created = System.nanoTime();
+        // Parsed and compiled from scratch on every launch: J2V8 4.8 exposes neither V8's code
+        // cache nor startup snapshots, so there is nothing to cache between launches. The build
+        // strips the bundle's source map (see buildAssetPack), so V8 only scans the code itself.
         v8_.executeVoidScript(script);
+        long executed = System.nanoTime();
+
+        bridge_ = new JsBridge(v8_, BRIDGE_ARG_SLOTS);
+        updateFn_ = bridge_.function("update");
+        renderFn_ = bridge_.function("render");
+        touchBatchFn_ = bridge_.function("touchBatch");
+        Log.d(TAG, "V8 runtime: "+((created - start) / 1000000)+" ms, script parse/compile/run: "+((executed - created) / 1000000)+" ms");
     }
 
     // --------------------------------------------------------------------------------------------
     // Calls into JS
 
-    public void jsUpdate(double dt)
+    // drainInput: hand the script everything that arrived since the last drain, in one call,
+    // before updating
+    public void jsUpdate(double dt, boolean drainInput)
     {
-        Touch touch;
-        while((touch = inputQueue_.poll()) != null)
+        if(drainInput && (input_.drain() > 0))
         {
-            String functionName;
-            switch(touch.type)
-            {
-                case DOWN: functionName = "touchDown"; break;
-                case UP:   functionName = "touchUp";   break;
-                default:
-                case MOVE: functionName = "touchMove"; break;
-            };
-
             Trace.beginSection("touch");
-            V8Array parameters = new V8Array(v8_);
-            parameters.push(touch.x);
-            parameters.push(touch.y);
-            v8_.executeVoidFunction(functionName, parameters);
+            long start = System.nanoTime();
+            touchBatchFn_.callVoid();
+            metrics_.endPhase(FrameMetrics.INPUT, start);
             Trace.endSection();
-
-            fastRenderFrames_ = FAST_FRAMES_AFTER_UPDATED;
+            needsFrame_ = true;
         }
 
-        V8Array parameters = new V8Array(v8_);
-        parameters.push(dt);
+        bridge_.args().put(0, dt);
         Trace.beginSection("update");
-        if(v8_.executeBooleanFunction("update", parameters))
-            fastRenderFrames_ = FAST_FRAMES_AFTER_UPDATED;
+        long start = System.nanoTime();
+        if(updateFn_.callBoolean())
+            needsFrame_ = true;
+        metrics_.endPhase(FrameMetrics.UPDATE, start);
         Trace.endSection();
     }
 
-    public boolean needsRender()
+    public void jsStartup()
     {
-        if(fastRenderFrames_ > 0)
-        {
-            fastRenderFrames_--;
-            return true;
-        }
-        return false;
+        bridge_.function("startup").callWith(width_, height_);
     }
 
-    public void jsStartup()
+    // Shares commandBuffer_'s storage with the script as a Float32Array, which Game.drawImage
+    // fills in directly
+    public void jsSetCommandBuffer()
     {
-        V8Array parameters = new V8Array(v8_);
-        parameters.push(width_);
-        parameters.push(height_);
-        v8_.executeVoidFunction("startup", parameters);
+        bridge_.shareBuffer(bridge_.function("setCommandBuffer"), commandBuffer_.bytes(), V8Value.FLOAT_32_ARRAY, commandBuffer_.capacity() * CommandBuffer.COMMAND_SIZE);
     }
 
-    public void jsRender()
+    // Shares the input ring's batch buffer with the script as a Float64Array, which touchBatch
+    // reads (see InputRing for the layout)
+    public void jsSetInputBuffer()
     {
-        Trace.beginSection("render");
-        V8Array parameters = new V8Array(v8_);
-
-        Trace.beginSection("js render");
-        V8Array renderCommands = v8_.executeArrayFunction("render", parameters);
-        Trace.endSection();
+        bridge_.shareBuffer(bridge_.function("setInputBuffer"), input_.batchBytes(), V8Value.FLOAT_64_ARRAY, input_.batchLength());
+    }
 
-        Trace.beginSection("native render");
+    // Shares the rules buffer with the script as an Int32Array (see RulesBridge). Must happen
+    // before startup(), which builds the first grid.
+    public void jsSetRulesBuffer()
+    {
+        bridge_.shareBuffer(bridge_.function("setRulesBuffer"), rules_.bytes(), V8Value.INT_32_ARRAY, rules_.length());
+    }
 
-        if(renderDataSize_ < renderCommands.length())
+    public void jsRender()
+    {
+        Trace.beginSection("js render");
+        long start = System.nanoTime();
+        // render() returns how many quads it wanted to draw, which can be more than fit. It starts
+        // over each time (commands and zones alike), so rendering again after growing is safe.
+        int quadCount = renderFn_.callInteger();
+        if(commandBuffer_.ensureCapacity(quadCount))
         {
-            renderDataSize_ = renderCommands.length();
-            renderData_ = new double[renderDataSize_];
+            Log.d(TAG, "Growing command buffer to "+commandBuffer_.capacity()+" quads");
+            jsSetCommandBuffer();
+            quadCount = renderFn_.callInteger();
         }
-
-        int quadCount = renderCommands.length() >> 4; // 16 doubles per quad
-        // Log.d(TAG, "drawing "+quadCount+" quads");
-
-        Trace.beginSection("get doubles");
-        renderCommands.getDoubles(0, renderCommands.length(), renderData_);
+        commandBuffer_.setQuadCount(quadCount);
+        metrics_.endPhase(FrameMetrics.RENDER, start);
         Trace.endSection();
+    }
 
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-
-        int currentTextureID = -1;
-        int qi = 0; // quad index
-        for(int i = 0; i < quadCount; i++, qi += 16)
-        {
-            // Indices:
-            //  0: texture ID
-            //  1: srcX
-            //  2: srcY
-            //  3: srcW
-            //  4: srcH
-            //  5: dstX
-            //  6: dstY
-            //  7: dstW
-            //  8: dstH
-            //  9: rot
-            // 10: anchorX
-            // 11: anchorY
-            // 12: red
-            // 13: green
-            // 14: blue
-            // 15: alpha
-
-            // switch to vertex colors (stop using uniform color)
-            //
-            // give each Texture class:
-            // verts_
-            // vertData_
-            // vertDataSize_
-            // tempCount
-            //
-            // then scan the incoming double array, counting up the quads per texture
-            // resize all texture vertData_ accordingly
-            // walk double array, populating vert buffers
-            // for each texture do a single verts_.put(),
-
-            Trace.beginSection("drawImage");
-
-            int textureIndex = (int)renderData_[qi+0];
-            if(textureIndex < 0)
-                textureIndex = 0;
-            if(textureIndex >= TEXTURE_COUNT)
-                textureIndex = TEXTURE_COUNT - 1;
-            Texture texture = textures_[textureIndex];
-            if(currentTextureID != texture.id)
-            {
-                currentTextureID = texture.id;
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, currentTextureID);
-            }
-
-            float uvL = (float)(renderData_[qi+1] / texture.width);
-            float uvT = (float)(renderData_[qi+2] / texture.height);
-            float uvR = (float)((renderData_[qi+1] + renderData_[qi+3]) / texture.width);
-            float uvB = (float)((renderData_[qi+2] + renderData_[qi+4]) / texture.height);
-
-            float[] vertData = {
-                // X, Y, Z, U, V
-                0, 0, 0, uvL, uvT,
-                1, 0, 0, uvR, uvT,
-                1, 1, 0, uvR, uvB,
-                0, 1, 0, uvL, uvB};
-            verts_.position(0);
-            verts_.put(vertData);
-
-            verts_.position(TRIANGLE_VERTICES_DATA_POS_OFFSET);
-            GLES20.glVertexAttribPointer(posHandle_, 3, GLES20.GL_FLOAT, false, TRIANGLE_VERTICES_DATA_STRIDE_BYTES, verts_);
-            checkGlError("glVertexAttribPointer maPosition");
-            verts_.position(TRIANGLE_VERTICES_DATA_UV_OFFSET);
-            GLES20.glEnableVertexAttribArray(posHandle_);
-            checkGlError("glEnableVertexAttribArray posHandle");
-            GLES20.glVertexAttribPointer(texHandle_, 2, GLES20.GL_FLOAT, false, TRIANGLE_VERTICES_DATA_STRIDE_BYTES, verts_);
-            checkGlError("glVertexAttribPointer texHandle");
-            GLES20.glEnableVertexAttribArray(texHandle_);
-            checkGlError("glEnableVertexAttribArray texHandle");
-
-            float anchorOffsetX = (float)(-1 * renderData_[qi+10] * renderData_[qi+7]);
-            float anchorOffsetY = (float)(-1 * renderData_[qi+11] * renderData_[qi+8]);
-            float degrees = (float)(renderData_[qi+9] * 180.0f / Math.PI);
-
-            Matrix.setIdentityM(modelMatrix_, 0);
-            Matrix.translateM(modelMatrix_, 0, (float)renderData_[qi+5], (float)renderData_[qi+6], 0);
-            Matrix.rotateM(modelMatrix_, 0, degrees, 0, 0, 1);
-            Matrix.translateM(modelMatrix_, 0, anchorOffsetX, anchorOffsetY, 0);
-            Matrix.scaleM(modelMatrix_, 0, (float)renderData_[qi+7], (float)renderData_[qi+8], 0);
-            Matrix.multiplyMM(viewProjMatrix_, 0, viewMatrix_, 0, modelMatrix_, 0);
-            Matrix.multiplyMM(viewProjMatrix_, 0, projMatrix_, 0, viewProjMatrix_, 0);
-
-            GLES20.glUniformMatrix4fv(viewProjMatrixHandle_, 1, false, viewProjMatrix_, 0);
-            GLES20.glUniform4f(vertColorHandle_, (float)renderData_[qi+12], (float)renderData_[qi+13], (float)renderData_[qi+14], (float)renderData_[qi+15]);
-            GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_INT, indices_);
-            checkGlError("glDrawElements");
-
-            Trace.endSection();
-        }
+    public void submitCommands(CommandBuffer frame)
+    {
+        Trace.beginSection("native render");
 
-        Trace.endSection();
-        renderCommands.release();
+        Matrix.multiplyMM(viewProjMatrix_, 0, projMatrix_, 0, viewMatrix_, 0);
+        backend_.beginFrame(width_, height_, 0.0f, 0.25f, 0.0f, viewProjMatrix_);
+        boundTexture_ = null;
+
+        // drawQuads is called from inside the decode loop, so the GL half is totalled up there
+        // and the rest is decode
+        drawNanos_ = 0;
+        long start = System.nanoTime();
+        int drawCalls = spriteBatch_.submit(frame, textures_, this);
+        long total = System.nanoTime() - start;
+        metrics_.recordPhase(FrameMetrics.DECODE, total - drawNanos_);
+        metrics_.recordPhase(FrameMetrics.SUBMIT, drawNanos_);
+        metrics_.count(FrameMetrics.QUADS, frame.quadCount());
+        metrics_.count(FrameMetrics.DRAW_CALLS, drawCalls);
+
+        backend_.endFrame();
         Trace.endSection();
     }
 
-    public void jsLoad(String s)
+    // Shares the state buffer with the script as an Int32Array (see Snapshot for the layout),
+    // which save() fills in and load() reads
+    public void jsSetStateBuffer()
     {
-        V8Array parameters = new V8Array(v8_);
-        parameters.push(s);
-        v8_.executeVoidFunction("load", parameters);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(Snapshot.STATE_LENGTH * 4).order(ByteOrder.nativeOrder());
+        stateBuffer_ = bytes.asIntBuffer();
+        bridge_.shareBuffer(bridge_.function("setStateBuffer"), bytes, V8Value.INT_32_ARRAY, Snapshot.STATE_LENGTH);
     }
 
-    public String jsSave()
+    // Sim thread only
+    public void jsLoad()
     {
-        String s = "";
-        V8Array parameters = new V8Array(v8_);
-        s = v8_.executeStringFunction("save", parameters);
-        return s;
+        bridge_.function("load").callVoid();
     }
 
-    public void jsTouchDown(double x, double y)
+    // Sim thread only. Returns false if the game has nothing to save.
+    public boolean jsSave()
     {
-        Touch touch = new Touch(TouchType.DOWN, x, y);
-        inputQueue_.offer(touch);
+        return bridge_.function("save").callBoolean();
     }
 
-    public void jsTouchMove(double x, double y)
+    // Saves the game as it is right now, without waiting for it. Called from the UI thread when
+    // the activity pauses: the snapshot is taken on the sim thread between frames, and written on
+    // the store's thread.
+    public void saveState()
     {
-        Touch touch = new Touch(TouchType.MOVE, x, y);
-        inputQueue_.offer(touch);
+        simHandler_.post(new Runnable() {
+            @Override
+            public void run() {
+                if(!jsSave())
+                    return;
+                Snapshot snapshot = new Snapshot();
+                snapshot.readFrom(stateBuffer_);
+                stateStore_.save(snapshot);
+            }
+        });
     }
 
-    public void jsTouchUp(double x, double y)
+    // Called from the UI thread only (InputRing has a single producer). timeMillis is the
+    // MotionEvent's event time.
+    public void touch(int type, double x, double y, long timeMillis)
     {
-        Touch touch = new Touch(TouchType.UP, x, y);
-        inputQueue_.offer(touch);
+        if(!input_.offer(type, x, y, timeMillis))
+            Log.w(TAG, "Input ring full, dropped touch type " + type + " (" + input_.dropped() + " total)");
     }
 
     // --------------------------------------------------------------------------------------------
@@ -461,59 +706,59 @@ public class M3Renderer implements GLTextureView.Renderer
         Log.d(TAG, "nativeLog: " + s);
     }
 
-    // --------------------------------------------------------------------------------------------
-    // Render internals
-
-    public void renderBegin(float r, float g, float b)
-    {
-        GLES20.glViewport(0, 0, width_, height_);
-        GLES20.glClearColor(r, g, b, 1.0f);
-        GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
-        GLES20.glUseProgram(shaderProgram_);
-        checkGlError("glUseProgram");
-    }
-
-    public void renderEnd()
+    // The script has just written a settled state into the state buffer (Game.stateChanged)
+    public void nativeStateChanged()
     {
+        stateChanged_ = true;
+        Snapshot snapshot = new Snapshot();
+        snapshot.readFrom(stateBuffer_);
+        stateStore_.autosave(snapshot);
     }
 
-    public void onSurfaceCreated(GL10 glUnused, EGLConfig config)
+    // Applies a save read at startup, unless the player has already changed the game (a save
+    // that arrives after the first move is older than what's on screen)
+    private void restore(Snapshot snapshot)
     {
-        // Ignore the passed-in GL10 interface, and use the GLES20
-        // class's static methods instead.
-        shaderProgram_ = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
-        if (shaderProgram_ == 0)
+        if(stateChanged_)
         {
+            Log.d(TAG, "Dropping restored save, the game has moved on");
             return;
         }
-        posHandle_ = GLES20.glGetAttribLocation(shaderProgram_, "aPosition");
-        checkGlError("glGetAttribLocation aPosition");
-        if (posHandle_ == -1)
-        {
-            throw new RuntimeException("Could not get attrib location for aPosition");
-        }
-        texHandle_ = GLES20.glGetAttribLocation(shaderProgram_, "aTextureCoord");
-        checkGlError("glGetAttribLocation aTextureCoord");
-        if (texHandle_ == -1)
-        {
-            throw new RuntimeException("Could not get attrib location for aTextureCoord");
-        }
+        snapshot.writeTo(stateBuffer_);
+        jsLoad();
+        needsFrame_ = true;
+        Log.d(TAG, "Restored save: turns " + snapshot.turns + ", progress " + snapshot.progress);
+    }
 
-        viewProjMatrixHandle_ = GLES20.glGetUniformLocation(shaderProgram_, "uMVPMatrix");
-        checkGlError("glGetUniformLocation uMVPMatrix");
-        if (viewProjMatrixHandle_ == -1)
-        {
-            throw new RuntimeException("Could not get attrib location for uMVPMatrix");
-        }
+    // --------------------------------------------------------------------------------------------
+    // Render internals
 
-        vertColorHandle_ = GLES20.glGetUniformLocation(shaderProgram_, "u_color");
-        checkGlError("glGetUniformLocation vertColorHandle");
-        if (vertColorHandle_ == -1)
+    // SpriteBatch's sink: times and counts each batch on its way to the backend
+    public void drawQuads(Texture texture, float[] vertData, int quadCount)
+    {
+        Trace.beginSection("drawQuads");
+        long start = System.nanoTime();
+
+        if(boundTexture_ != texture)
         {
-            throw new RuntimeException("Could not get attrib location for vertColorHandle");
+            metrics_.count(FrameMetrics.TEXTURE_BINDS, 1);
+            boundTexture_ = texture;
         }
+        backend_.drawQuads(texture, vertData, quadCount);
+
+        drawNanos_ += System.nanoTime() - start;
+        Trace.endSection();
+    }
 
+    public void onSurfaceCreated(GL10 glUnused, EGLConfig config)
+    {
+        // Ignore the passed-in GL10 interface, and use the GLES20
+        // class's static methods instead.
+        long start = System.nanoTime();
+        gl_.create();
         loadTextures();
+        forceDraw_ = true;
+        Log.d(TAG, "onSurfaceCreated: GL objects created in "+((System.nanoTime() - start) / 1000)+" us");
 
         Matrix.setLookAtM(viewMatrix_, 0,
                 0, 0, 10,         // eye
@@ -521,21 +766,32 @@ public class M3Renderer implements GLTextureView.Renderer
                 0f, 1.0f, 0.0f);  // up
     }
 
+    // Only when the context goes away: the view preserves it across pause/resume, so this means
+    // shutdown (the context is still current, and about to be destroyed) or a lost context (it is
+    // already gone). Either way the GL objects die with it; only the loader needs stopping.
     public void onSurfaceDestroyed(GL10 glUnused)
     {
+        if(textureLoader_ != null)
+            textureLoader_.cancel();
     }
 
     public void onSurfaceChanged(GL10 glUnused, int width, int height)
     {
         width_ = width;
         height_ = height;
+        forceDraw_ = true;
 
         float density = context_.getResources().getDisplayMetrics().density;
         Log.d(TAG, "onSurfaceChanged("+width_+", "+height_+", "+density+")");
 
-        // Ignore the passed-in GL10 interface, and use the GLES20
-        // class's static methods instead.
-        GLES20.glViewport(0, 0, width_, height_);
+        // The swap interval belongs to the window surface, and a preserved context gets a new one
+        // on every resume
+        if(!view_.getEGLManager().setSwapInterval(SWAP_INTERVAL))
+            Log.d(TAG, "eglSwapInterval unavailable, using the driver default");
+
+        // Surface changes arrive on this thread after any frame the activity asked for, and the
+        // new surface has nothing on it yet
+        uiHandler_.post(requestNextFrame_);
 
         float left = 0.0f;
         float right = width;
@@ -545,112 +801,4 @@ public class M3Renderer implements GLTextureView.Renderer
         float far = 20.0f;
         Matrix.orthoM(projMatrix_, 0, left, right, bottom, top, near, far);
     }
-
-    private int loadShader(int shaderType, String source)
-    {
-        int shader = GLES20.glCreateShader(shaderType);
-        if (shader != 0)
-        {
-            GLES20.glShaderSource(shader, source);
-            GLES20.glCompileShader(shader);
-            int[] compiled = new int[1];
-            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-            if (compiled[0] == 0)
-            {
-                Log.e(TAG, "Could not compile shader " + shaderType + ":");
-                Log.e(TAG, GLES20.glGetShaderInfoLog(shader));
-                GLES20.glDeleteShader(shader);
-                shader = 0;
-            }
-        }
-        return shader;
-    }
-
-    private int createProgram(String vertexSource, String fragmentSource)
-    {
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-        if (vertexShader == 0)
-        {
-            return 0;
-        }
-
-        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-        if (pixelShader == 0)
-        {
-            return 0;
-        }
-
-        int program = GLES20.glCreateProgram();
-        if (program != 0)
-        {
-            GLES20.glAttachShader(program, vertexShader);
-            checkGlError("glAttachShader");
-            GLES20.glAttachShader(program, pixelShader);
-            checkGlError("glAttachShader");
-            GLES20.glLinkProgram(program);
-            int[] linkStatus = new int[1];
-            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-            if (linkStatus[0] != GLES20.GL_TRUE)
-            {
-                Log.e(TAG, "Could not link program: ");
-                Log.e(TAG, GLES20.glGetProgramInfoLog(program));
-                GLES20.glDeleteProgram(program);
-                program = 0;
-            }
-        }
-        return program;
-    }
-
-    // --------------------------------------------------------------------------------------------
-    // Helper functions
-
-    private void checkGlError(String op)
-    {
-        int error;
-        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR)
-        {
-            Log.e(TAG, op + ": glError " + error);
-            throw new RuntimeException(op + ": glError " + error);
-        }
-    }
-
-    public Texture loadPNG(int res)
-    {
-        int[] textures = new int[1];
-        GLES20.glGenTextures(1, textures, 0);
-
-        int id = textures[0];
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, id);
-
-        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
-
-        InputStream is = context_.getResources().openRawResource(res);
-        Bitmap bitmap;
-        try
-        {
-            bitmap = BitmapFactory.decodeStream(is);
-        } finally
-        {
-            try
-            {
-                is.close();
-            } catch (IOException e)
-            {
-                // Ignore.
-            }
-        }
-
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-
-        Texture texture = new Texture();
-        texture.id = id;
-        texture.width = (double)bitmap.getWidth();
-        texture.height = (double)bitmap.getHeight();
-        bitmap.recycle();
-        return texture;
-    }
 }
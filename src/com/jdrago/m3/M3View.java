@@ -13,33 +13,71 @@ import javax.microedition.khronos.opengles.GL10;
 
 class M3View extends GLTextureView
 {
-    public M3View(Context context, M3Activity activity, Point displaySize, String script)
+    public M3View(Context context, M3Activity activity, Point displaySize, AssetPack pack, String script)
     {
         super(context);
         setVersion(GLESVersion.OpenGLES20);
-        setRenderingThreadType(RenderingThreadType.RequestThread);
+        // The renderer's GL thread owns the context: it stays current there, surface changes are
+        // posted to it, and the UI thread never touches EGL
+        setRenderingThreadType(RenderingThreadType.OwnedThread);
+        // Resuming only attaches a new window surface; shaders, buffers and textures survive
+        setPreserveEGLContextOnPause(true);
         activity_ = activity;
 
-        renderer_ = new M3Renderer(context, activity, this, displaySize, script);
+        renderer_ = new M3Renderer(context, activity, this, displaySize, pack, script);
         setRenderer(renderer_);
+        setRenderingHandler(renderer_.glHandler());
     }
 
+    // Only one finger plays: the first one down is tracked until it lifts, and others are ignored
+    // while it's down. A finger that lands while none is tracked (say, a second one kept down
+    // after the first lifted) takes over as a new touch. Every sample of the tracked finger is
+    // forwarded, the historical ones a MOVE batches up included, each with its own time: the ring
+    // coalesces moves for the script, but the last samples before a lift are what the script's
+    // drag velocity (and so a flick) is measured from.
     public boolean onTouchEvent(MotionEvent event)
     {
-        int action = event.getAction();
-        double x = event.getX(0);
-        double y = event.getY(0);
+        int action = event.getActionMasked();
         switch(action)
         {
             case MotionEvent.ACTION_DOWN:
-                activity_.touchDown(x, y);
+            case MotionEvent.ACTION_POINTER_DOWN:
+            {
+                if((action == MotionEvent.ACTION_POINTER_DOWN) && (pointerId_ != INVALID_POINTER_ID))
+                    break;
+                int index = event.getActionIndex();
+                pointerId_ = event.getPointerId(index);
+                activity_.touch(InputRing.DOWN, event.getX(index), event.getY(index), event.getEventTime());
                 break;
+            }
+
             case MotionEvent.ACTION_MOVE:
-                activity_.touchMove(x, y);
+            {
+                int index = event.findPointerIndex(pointerId_);
+                if(index != -1)
+                {
+                    int history = event.getHistorySize();
+                    for(int h = 0; h < history; h++)
+                        activity_.touch(InputRing.MOVE, event.getHistoricalX(index, h), event.getHistoricalY(index, h), event.getHistoricalEventTime(h));
+                    activity_.touch(InputRing.MOVE, event.getX(index), event.getY(index), event.getEventTime());
+                }
                 break;
+            }
+
+            case MotionEvent.ACTION_POINTER_UP:
             case MotionEvent.ACTION_UP:
-                activity_.touchUp(x, y);
+            case MotionEvent.ACTION_CANCEL:
+            {
+                int index = event.getActionIndex();
+                if(action == MotionEvent.ACTION_CANCEL)
+                    index = event.findPointerIndex(pointerId_);
+                if((index != -1) && (event.getPointerId(index) == pointerId_))
+                {
+                    activity_.touch(InputRing.UP, event.getX(index), event.getY(index), event.getEventTime());
+                    pointerId_ = INVALID_POINTER_ID;
+                }
                 break;
+            }
         }
         return true;
     }
@@ -81,4 +119,7 @@ class M3View extends GLTextureView
     private static String TAG = "M3";
     private M3Activity activity_;
     private M3Renderer renderer_;
+    private int pointerId_ = INVALID_POINTER_ID;
+
+    static private final int INVALID_POINTER_ID = -1;
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.jdrago.m3;
+
+// Places the four corners of a 2D quad directly from its destination rect, rotation and anchor.
+// This is the same transform the renderer used to build with android.opengl.Matrix
+// (translate * rotate * translate(anchor) * scale), reduced to the handful of multiplies that
+// actually touch X and Y. Nothing here allocates; results are written straight into the caller's
+// vertex array.
+public class QuadTransform
+{
+    // Corner order matches the quad indices: top-left, top-right, bottom-right, bottom-left
+    static private final float[] CORNER_U = { 0, 1, 1, 0 };
+    static private final float[] CORNER_V = { 0, 0, 1, 1 };
+
+    private QuadTransform()
+    {
+    }
+
+    // Writes X,Y for each of the 4 corners into out, starting at offset and advancing by stride
+    // floats per corner. Returns the offset just past the last corner written.
+    static public int transform(float dstX, float dstY, float dstW, float dstH, float rot,
+                                float anchorX, float anchorY, float[] out, int offset, int stride)
+    {
+        float left = -1 * anchorX * dstW;
+        float top = -1 * anchorY * dstH;
+
+        if(rot == 0)
+        {
+            // Axis aligned, which is nearly every quad in a frame
+            float l = dstX + left;
+            float t = dstY + top;
+            float r = l + dstW;
+            float b = t + dstH;
+            out[offset] = l;
+            out[offset + 1] = t;
+            offset += stride;
+            out[offset] = r;
+            out[offset + 1] = t;
+            offset += stride;
+            out[offset] = r;
+            out[offset + 1] = b;
+            offset += stride;
+            out[offset] = l;
+            out[offset + 1] = b;
+            offset += stride;
+            return offset;
+        }
+
+        float c = (float)Math.cos(rot);
+        float s = (float)Math.sin(rot);
+        for(int i = 0; i < 4; i++)
+        {
+            float lx = left + (CORNER_U[i] * dstW);
+            float ly = top + (CORNER_V[i] * dstH);
+            out[offset] = dstX + (lx * c) - (ly * s);
+            out[offset + 1] = dstY + (lx * s) + (ly * c);
+            offset += stride;
+        }
+        return offset;
+    }
+}
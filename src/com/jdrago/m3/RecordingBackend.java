@@ -0,0 +1,200 @@
+package com.jdrago.m3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// GLBackend that draws nothing and writes down what it was asked to do: frame begin/end (with
+// viewport, clear color and matrix), texture binds (only real changes, as GLES20Backend would
+// issue them), draws (with a copy of their vertices), placeholder creation and texture deletes
+// (placeholders get ids counting up from 1), and error checks. For checking what the pipeline
+// sends to GL, and for profiling it with the GPU out of the picture. Plain Java.
+public class RecordingBackend implements GLBackend
+{
+    // --------------------------------------------------------------------------------------------
+    // Calls
+
+    static public final int BEGIN_FRAME = 0;
+    static public final int BIND_TEXTURE = 1;
+    static public final int DRAW_QUADS = 2;
+    static public final int END_FRAME = 3;
+    static public final int CREATE_PLACEHOLDER = 4;
+    static public final int DELETE_TEXTURE = 5;
+    static public final int CHECK_ERROR = 6;
+
+    static private final String[] CALL_NAMES = { "beginFrame", "bindTexture", "drawQuads", "endFrame",
+                                                 "createPlaceholder", "deleteTexture", "checkError" };
+
+    static public class Call
+    {
+        public int type;
+        public int width;           // BEGIN_FRAME
+        public int height;          // BEGIN_FRAME
+        public float[] clearColor;  // BEGIN_FRAME, r g b
+        public float[] matrix;      // BEGIN_FRAME, column-major 4x4
+        public int textureId;       // BIND_TEXTURE, DRAW_QUADS, CREATE_PLACEHOLDER, DELETE_TEXTURE
+        public int quadCount;       // DRAW_QUADS
+        public float[] vertices;    // DRAW_QUADS
+        public String op;           // CHECK_ERROR
+
+        @Override
+        public String toString()
+        {
+            switch(type)
+            {
+                case BEGIN_FRAME:        return CALL_NAMES[type] + " " + width + "x" + height;
+                case BIND_TEXTURE:       return CALL_NAMES[type] + " " + textureId;
+                case DRAW_QUADS:         return CALL_NAMES[type] + " " + quadCount + " quads";
+                case CREATE_PLACEHOLDER: return CALL_NAMES[type] + " " + textureId;
+                case DELETE_TEXTURE:     return CALL_NAMES[type] + " " + textureId;
+                case CHECK_ERROR:        return CALL_NAMES[type] + " " + op;
+            }
+            return CALL_NAMES[type];
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private boolean recordCalls_;
+    private ArrayList<Call> calls_ = new ArrayList<Call>();
+    private int boundTextureId_;
+    private long frames_;
+    private long binds_;
+    private long draws_;
+    private long quads_;
+    private int nextTextureId_ = 1;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // recordCalls: keep every call, vertices and all (for comparing output exactly); without it
+    // only the totals are kept and nothing is allocated per call, which is what profiling wants
+    public RecordingBackend(boolean recordCalls)
+    {
+        recordCalls_ = recordCalls;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // GLBackend
+
+    public void beginFrame(int width, int height, float r, float g, float b, float[] viewProjMatrix)
+    {
+        if(recordCalls_)
+        {
+            Call call = add(BEGIN_FRAME);
+            call.width = width;
+            call.height = height;
+            call.clearColor = new float[] { r, g, b };
+            call.matrix = viewProjMatrix.clone();
+        }
+        boundTextureId_ = -1;
+        frames_++;
+    }
+
+    public void drawQuads(Texture texture, float[] vertData, int quadCount)
+    {
+        if(boundTextureId_ != texture.id)
+        {
+            boundTextureId_ = texture.id;
+            if(recordCalls_)
+                add(BIND_TEXTURE).textureId = texture.id;
+            binds_++;
+        }
+
+        if(recordCalls_)
+        {
+            Call call = add(DRAW_QUADS);
+            call.textureId = texture.id;
+            call.quadCount = quadCount;
+            call.vertices = new float[quadCount * SpriteBatch.FLOATS_PER_QUAD];
+            System.arraycopy(vertData, 0, call.vertices, 0, call.vertices.length);
+        }
+        draws_++;
+        quads_ += quadCount;
+    }
+
+    public void endFrame()
+    {
+        if(recordCalls_)
+            add(END_FRAME);
+    }
+
+    public Texture createPlaceholder(double width, double height)
+    {
+        Texture texture = new Texture();
+        texture.id = nextTextureId_++;
+        texture.width = width;
+        texture.height = height;
+        texture.levels = 1;
+        texture.bytes = 4;
+        if(recordCalls_)
+            add(CREATE_PLACEHOLDER).textureId = texture.id;
+        return texture;
+    }
+
+    public void deleteTexture(Texture texture)
+    {
+        if(recordCalls_)
+            add(DELETE_TEXTURE).textureId = texture.id;
+    }
+
+    public void checkError(String op)
+    {
+        if(recordCalls_)
+            add(CHECK_ERROR).op = op;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Results
+
+    public List<Call> calls()
+    {
+        return calls_;
+    }
+
+    // Forgets the recorded calls; the totals below keep counting
+    public void clear()
+    {
+        calls_.clear();
+    }
+
+    public long frames()
+    {
+        return frames_;
+    }
+
+    public long textureBinds()
+    {
+        return binds_;
+    }
+
+    public long drawCalls()
+    {
+        return draws_;
+    }
+
+    public long quads()
+    {
+        return quads_;
+    }
+
+    // The recorded calls, one per line
+    public String dump()
+    {
+        StringBuilder out = new StringBuilder();
+        for(Call call : calls_)
+            out.append(call).append('\n');
+        return out.toString();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    private Call add(int type)
+    {
+        Call call = new Call();
+        call.type = type;
+        calls_.add(call);
+        return call;
+    }
+}
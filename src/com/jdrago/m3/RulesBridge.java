@@ -0,0 +1,171 @@
+package com.jdrago.m3;
+
+import com.jdrago.m3.rules.Board;
+import com.jdrago.m3.rules.Solver;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Lets the script score its grid with rules.Board instead of walking it in JS. The two sides share
+// one Int32Array (see Grid.nativeScoreGrid):
+//
+//   [0, 64):    gem type of cell (x, y) at (x * 8) + y, written by the script
+//   [64, 128):  that cell's score, written by score()
+//   [128, 132): srcX, srcY, dstX, dstY of the best slide, written by hintResult()
+//
+// so a drag preview or cascade check is one call with no arguments, no handles and no garbage.
+// Called from the sim thread only; hints are solved on the solver's pool, and the script polls for
+// them, so the sim thread never waits out a solve.
+public class RulesBridge
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final String TAG = "M3";
+
+    static public final int TYPES_OFFSET = 0;
+    static public final int SCORES_OFFSET = Board.CELLS;
+    static public final int HINT_OFFSET = Board.CELLS * 2;
+    static public final int LENGTH = HINT_OFFSET + 4;
+
+    // hintResult()
+    static public final int HINT_PENDING = -1;
+    static public final int HINT_NONE = 0;
+    static public final int HINT_FOUND = 1;
+    static public final int HINT_STALE = 2;
+
+    // Transposition table for the hint solver: 64K entries, 1.5MB
+    static private final int SOLVER_TABLE_BITS = 16;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private ByteBuffer bytes_;
+    private IntBuffer ints_;
+    private Board board_ = new Board(0);
+    private int[] scores_ = new int[Board.CELLS];
+    private Solver solver_;
+    private Board hintBoard_ = new Board(0); // the pool's while hint_ is running
+    private Future<Solver.Result> hint_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public RulesBridge()
+    {
+        bytes_ = ByteBuffer.allocateDirect(LENGTH * 4).order(ByteOrder.nativeOrder());
+        ints_ = bytes_.asIntBuffer();
+    }
+
+    // The shared storage, for JsBridge.shareBuffer as an Int32Array of length()
+    public ByteBuffer bytes()
+    {
+        return bytes_;
+    }
+
+    public int length()
+    {
+        return LENGTH;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Calls from JS
+
+    // nativeRulesScore(): Grid.scoreGrid on the shared buffer. Returns true if anything matched.
+    public boolean score()
+    {
+        readBoard();
+        boolean matched = board_.scores(scores_);
+        for(int i = 0; i < Board.CELLS; i++)
+            ints_.put(SCORES_OFFSET + i, scores_[i]);
+        return matched;
+    }
+
+    // nativeRulesHint(budgetMicros): starts looking for the best slide on the shared buffer's
+    // board, spending about budgetMicros on the solver's pool, and returns straight away. Returns
+    // false if the last one hasn't been collected by hintResult() yet.
+    public boolean hint(int budgetMicros)
+    {
+        if(hint_ != null)
+            return false;
+        if(solver_ == null)
+            solver_ = new Solver(Runtime.getRuntime().availableProcessors(), SOLVER_TABLE_BITS);
+
+        readBoard();
+        hintBoard_.copyFrom(board_);
+        hint_ = solver_.submit(hintBoard_, budgetMicros * 1000L);
+        return true;
+    }
+
+    // nativeRulesHintResult(): HINT_PENDING until the solve hint() started is done (and when
+    // there isn't one), then, once, HINT_FOUND with the slide in the hint slots, HINT_NONE if
+    // there is no legal slide, or HINT_STALE if the shared buffer's board is no longer the one
+    // that was solved.
+    public int hintResult()
+    {
+        if((hint_ == null) || !hint_.isDone())
+            return HINT_PENDING;
+
+        Solver.Result result;
+        try
+        {
+            result = hint_.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return HINT_PENDING;
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException("Hint solve failed", e.getCause());
+        }
+        hint_ = null;
+        Log.d(TAG, "hint: " + result);
+
+        readBoard();
+        if(!board_.sameCells(hintBoard_))
+            return HINT_STALE;
+        if(result.count() == 0)
+            return HINT_NONE;
+        ints_.put(HINT_OFFSET, result.srcX(0));
+        ints_.put(HINT_OFFSET + 1, result.srcY(0));
+        ints_.put(HINT_OFFSET + 2, result.dstX(0));
+        ints_.put(HINT_OFFSET + 3, result.dstY(0));
+        return HINT_FOUND;
+    }
+
+    // Stops the solver's threads, if it has any, abandoning a hint in progress
+    public void release()
+    {
+        hint_ = null;
+        if(solver_ != null)
+        {
+            solver_.shutdown();
+            solver_ = null;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    private void readBoard()
+    {
+        board_.clear();
+        for(int x = 0; x < Board.SIZE; x++)
+        {
+            for(int y = 0; y < Board.SIZE; y++)
+            {
+                // Anything the rules don't know (no gem, or a type they don't have) never matches
+                int type = ints_.get(TYPES_OFFSET + Board.cell(x, y));
+                if((type >= 0) && (type < Board.TYPE_COUNT))
+                    board_.setType(x, y, type);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.jdrago.m3;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.zip.CRC32;
+
+// One saved game: what the script puts in its state buffer (see Game.saveState), copied out so it
+// can be encoded and written on another thread while the game carries on.
+//
+// The state buffer, an Int32Array of STATE_LENGTH:
+//
+//   [0]       turns
+//   [1]       progress
+//   [2, 66)   gem type of cell (x, y) at 2 + (x * 8) + y
+//
+// On disk (little-endian, version 1):
+//
+//   "M3SV"            magic
+//   u8                version
+//   varint            turns
+//   varint            progress
+//   u8[24]            64 gem types, 3 bits each, cell 0 in the low bits
+//   u32               CRC32 of everything before it
+//
+// About 36 bytes for a typical game. Unknown versions and bad checksums decode as an
+// IOException, which the caller treats as "no save".
+public class Snapshot
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static public final int STATE_TURNS = 0;
+    static public final int STATE_PROGRESS = 1;
+    static public final int STATE_CELLS = 2;
+    static public final int CELL_COUNT = 64;
+    static public final int STATE_LENGTH = STATE_CELLS + CELL_COUNT;
+
+    static private final byte[] MAGIC = { 'M', '3', 'S', 'V' };
+    static private final int VERSION = 1;
+    static private final int BITS_PER_CELL = 3;
+    static private final int CELL_MASK = (1 << BITS_PER_CELL) - 1;
+    static private final int PACKED_CELL_BYTES = (CELL_COUNT * BITS_PER_CELL) / 8;
+    static private final int MAX_ENCODED_SIZE = MAGIC.length + 1 + 5 + 5 + PACKED_CELL_BYTES + 4;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    public int turns;
+    public int progress;
+    public int[] cells = new int[CELL_COUNT];
+
+    // --------------------------------------------------------------------------------------------
+    // State buffer
+
+    public void readFrom(IntBuffer state)
+    {
+        turns = state.get(STATE_TURNS);
+        progress = state.get(STATE_PROGRESS);
+        for(int i = 0; i < CELL_COUNT; i++)
+            cells[i] = state.get(STATE_CELLS + i);
+    }
+
+    public void writeTo(IntBuffer state)
+    {
+        state.put(STATE_TURNS, turns);
+        state.put(STATE_PROGRESS, progress);
+        for(int i = 0; i < CELL_COUNT; i++)
+            state.put(STATE_CELLS + i, cells[i]);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Encoding
+
+    public byte[] encode()
+    {
+        byte[] out = new byte[MAX_ENCODED_SIZE];
+        int pos = 0;
+        for(byte b : MAGIC)
+            out[pos++] = b;
+        out[pos++] = (byte)VERSION;
+        pos = putVarint(out, pos, turns);
+        pos = putVarint(out, pos, progress);
+
+        long bits = 0;
+        int bitCount = 0;
+        for(int i = 0; i < CELL_COUNT; i++)
+        {
+            bits |= (long)(cells[i] & CELL_MASK) << bitCount;
+            bitCount += BITS_PER_CELL;
+            while(bitCount >= 8)
+            {
+                out[pos++] = (byte)bits;
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        pos = putInt(out, pos, (int)crc(out, pos));
+        byte[] encoded = new byte[pos];
+        System.arraycopy(out, 0, encoded, 0, pos);
+        return encoded;
+    }
+
+    static public Snapshot decode(byte[] data) throws IOException
+    {
+        if(data.length < MAGIC.length + 1 + 4)
+            throw new IOException("Save is truncated (" + data.length + " bytes)");
+        for(int i = 0; i < MAGIC.length; i++)
+        {
+            if(data[i] != MAGIC[i])
+                throw new IOException("Not a save file");
+        }
+        int end = data.length - 4;
+        int stored = getInt(data, end);
+        if(stored != (int)crc(data, end))
+            throw new IOException("Save checksum mismatch");
+        int version = data[MAGIC.length] & 0xff;
+        if(version != VERSION)
+            throw new IOException("Unknown save version " + version);
+
+        Snapshot snapshot = new Snapshot();
+        int[] pos = { MAGIC.length + 1 };
+        snapshot.turns = getVarint(data, pos, end);
+        snapshot.progress = getVarint(data, pos, end);
+        if(pos[0] + PACKED_CELL_BYTES != end)
+            throw new IOException("Save has " + (end - pos[0]) + " bytes of cells");
+
+        long bits = 0;
+        int bitCount = 0;
+        int p = pos[0];
+        for(int i = 0; i < CELL_COUNT; i++)
+        {
+            while(bitCount < BITS_PER_CELL)
+            {
+                bits |= (long)(data[p++] & 0xff) << bitCount;
+                bitCount += 8;
+            }
+            snapshot.cells[i] = (int)(bits & CELL_MASK);
+            bits >>>= BITS_PER_CELL;
+            bitCount -= BITS_PER_CELL;
+        }
+        return snapshot;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    static private long crc(byte[] data, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+
+    // Unsigned LEB128; negative values (which the game never has) take the full five bytes
+    static private int putVarint(byte[] out, int pos, int value)
+    {
+        while((value & ~0x7f) != 0)
+        {
+            out[pos++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte)value;
+        return pos;
+    }
+
+    static private int getVarint(byte[] data, int[] pos, int end) throws IOException
+    {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7)
+        {
+            if(pos[0] >= end)
+                throw new IOException("Save is truncated");
+            int b = data[pos[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Bad varint in save");
+    }
+
+    static private int putInt(byte[] out, int pos, int value)
+    {
+        out[pos++] = (byte)value;
+        out[pos++] = (byte)(value >>> 8);
+        out[pos++] = (byte)(value >>> 16);
+        out[pos++] = (byte)(value >>> 24);
+        return pos;
+    }
+
+    static private int getInt(byte[] data, int pos)
+    {
+        return (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8) | ((data[pos + 2] & 0xff) << 16) | ((data[pos + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,272 @@
+package com.jdrago.m3;
+
+import java.util.HashMap;
+
+// GLBackend that rasterizes into an ARGB pixel array (row 0 at the top), for rendering frames on
+// a machine with no GPU and comparing them against golden images. It does what the GLES20 path
+// does, simply rather than quickly:
+//
+// * vertex positions go through the frame's matrix to clip space, then to the viewport
+// * triangles cover the pixels whose centers they contain; shared edges belong to exactly one of
+//   the two triangles, so a quad's diagonal isn't blended twice
+// * texels are fetched nearest, clamped to the edge; a texture with no pixels set samples white,
+//   and a placeholder is a single transparent texel, as on the device
+// * the interpolated vertex color modulates the texel, then SRC_ALPHA/ONE_MINUS_SRC_ALPHA blends
+//   it over the framebuffer
+//
+// Filtering and mip selection are not emulated, so compare images from this backend against
+// goldens from this backend, not against device screenshots. Plain Java.
+public class SoftwareBackend implements GLBackend
+{
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private static class Image
+    {
+        int width;
+        int height;
+        int[] argb;
+    }
+
+    private HashMap<Integer, Image> images_ = new HashMap<Integer, Image>();
+    private int nextTextureId_ = -1; // placeholders count down, clear of the ids callers pick
+    private int width_;
+    private int height_;
+    private int[] pixels_ = new int[0];
+    private float[] matrix_ = new float[16];
+    private Image image_;
+
+    // One triangle's corners in window space, plus their attributes
+    private float[] wx_ = new float[3];
+    private float[] wy_ = new float[3];
+    private float[] u_ = new float[3];
+    private float[] v_ = new float[3];
+    private float[][] color_ = new float[3][4];
+
+    // --------------------------------------------------------------------------------------------
+    // Textures
+
+    // Gives texture (by id) its pixels: width x height, ARGB, row 0 at the top. Texture.width and
+    // height are what UVs were computed against and are not looked at here.
+    public void setTexturePixels(Texture texture, int width, int height, int[] argb)
+    {
+        if(argb.length < width * height)
+            throw new IllegalArgumentException("Texture " + texture.id + ": " + argb.length + " pixels for " + width + "x" + height);
+        Image image = new Image();
+        image.width = width;
+        image.height = height;
+        image.argb = argb;
+        images_.put(texture.id, image);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Results
+
+    // The last frame, width() x height() ARGB pixels, row 0 at the top
+    public int[] pixels()
+    {
+        return pixels_;
+    }
+
+    public int width()
+    {
+        return width_;
+    }
+
+    public int height()
+    {
+        return height_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // GLBackend
+
+    public void beginFrame(int width, int height, float r, float g, float b, float[] viewProjMatrix)
+    {
+        if((width != width_) || (height != height_))
+        {
+            width_ = width;
+            height_ = height;
+            pixels_ = new int[width * height];
+        }
+        System.arraycopy(viewProjMatrix, 0, matrix_, 0, 16);
+
+        int clear = pack(r, g, b, 1);
+        for(int i = 0; i < pixels_.length; i++)
+            pixels_[i] = clear;
+    }
+
+    public void drawQuads(Texture texture, float[] vertData, int quadCount)
+    {
+        image_ = images_.get(texture.id);
+        for(int quad = 0; quad < quadCount; quad++)
+        {
+            int base = quad * SpriteBatch.FLOATS_PER_QUAD;
+            drawTriangle(vertData, base, 0, 1, 2);
+            drawTriangle(vertData, base, 2, 3, 0);
+        }
+    }
+
+    public void endFrame()
+    {
+    }
+
+    public Texture createPlaceholder(double width, double height)
+    {
+        Texture texture = new Texture();
+        texture.id = nextTextureId_--;
+        texture.width = width;
+        texture.height = height;
+        texture.levels = 1;
+        texture.bytes = 4;
+        setTexturePixels(texture, 1, 1, new int[] { 0 });
+        return texture;
+    }
+
+    public void deleteTexture(Texture texture)
+    {
+        images_.remove(texture.id);
+    }
+
+    public void checkError(String op)
+    {
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Rasterizer
+
+    private void drawTriangle(float[] vertData, int base, int a, int b, int c)
+    {
+        loadVertex(0, vertData, base + (a * SpriteBatch.FLOATS_PER_VERTEX));
+        loadVertex(1, vertData, base + (b * SpriteBatch.FLOATS_PER_VERTEX));
+        loadVertex(2, vertData, base + (c * SpriteBatch.FLOATS_PER_VERTEX));
+
+        float area = edge(0, 1, wx_[2], wy_[2]);
+        if(area == 0)
+            return;
+        if(area < 0)
+        {
+            swapVertices(1, 2);
+            area = -area;
+        }
+
+        int minX = Math.max(0, (int)Math.floor(Math.min(wx_[0], Math.min(wx_[1], wx_[2]))));
+        int maxX = Math.min(width_ - 1, (int)Math.ceil(Math.max(wx_[0], Math.max(wx_[1], wx_[2]))));
+        int minY = Math.max(0, (int)Math.floor(Math.min(wy_[0], Math.min(wy_[1], wy_[2]))));
+        int maxY = Math.min(height_ - 1, (int)Math.ceil(Math.max(wy_[0], Math.max(wy_[1], wy_[2]))));
+
+        for(int y = minY; y <= maxY; y++)
+        {
+            float py = y + 0.5f;
+            for(int x = minX; x <= maxX; x++)
+            {
+                float px = x + 0.5f;
+                float w0 = edge(1, 2, px, py);
+                float w1 = edge(2, 0, px, py);
+                float w2 = edge(0, 1, px, py);
+                if(!covers(w0, 1, 2) || !covers(w1, 2, 0) || !covers(w2, 0, 1))
+                    continue;
+
+                w0 /= area;
+                w1 /= area;
+                w2 /= area;
+                shade(x, y, w0, w1, w2);
+            }
+        }
+    }
+
+    private void shade(int x, int y, float w0, float w1, float w2)
+    {
+        float sr = 1, sg = 1, sb = 1, sa = 1;
+        if(image_ != null)
+        {
+            float u = (w0 * u_[0]) + (w1 * u_[1]) + (w2 * u_[2]);
+            float v = (w0 * v_[0]) + (w1 * v_[1]) + (w2 * v_[2]);
+            int tx = clamp((int)Math.floor(u * image_.width), image_.width - 1);
+            int ty = clamp((int)Math.floor(v * image_.height), image_.height - 1);
+            int texel = image_.argb[(ty * image_.width) + tx];
+            sa = ((texel >>> 24) & 0xff) / 255.0f;
+            sr = ((texel >>> 16) & 0xff) / 255.0f;
+            sg = ((texel >>> 8) & 0xff) / 255.0f;
+            sb = (texel & 0xff) / 255.0f;
+        }
+        sr *= (w0 * color_[0][0]) + (w1 * color_[1][0]) + (w2 * color_[2][0]);
+        sg *= (w0 * color_[0][1]) + (w1 * color_[1][1]) + (w2 * color_[2][1]);
+        sb *= (w0 * color_[0][2]) + (w1 * color_[1][2]) + (w2 * color_[2][2]);
+        sa *= (w0 * color_[0][3]) + (w1 * color_[1][3]) + (w2 * color_[2][3]);
+
+        int index = (y * width_) + x;
+        int dst = pixels_[index];
+        float da = ((dst >>> 24) & 0xff) / 255.0f;
+        float dr = ((dst >>> 16) & 0xff) / 255.0f;
+        float dg = ((dst >>> 8) & 0xff) / 255.0f;
+        float db = (dst & 0xff) / 255.0f;
+        float inv = 1 - sa;
+        pixels_[index] = pack((sr * sa) + (dr * inv), (sg * sa) + (dg * inv), (sb * sa) + (db * inv), (sa * sa) + (da * inv));
+    }
+
+    // Clip space through the viewport; z is ignored (sprites are all at 0, no depth test)
+    private void loadVertex(int i, float[] vertData, int vi)
+    {
+        float x = vertData[vi + SpriteBatch.POS_OFFSET];
+        float y = vertData[vi + SpriteBatch.POS_OFFSET + 1];
+        float cx = (matrix_[0] * x) + (matrix_[4] * y) + matrix_[12];
+        float cy = (matrix_[1] * x) + (matrix_[5] * y) + matrix_[13];
+        float cw = (matrix_[3] * x) + (matrix_[7] * y) + matrix_[15];
+        wx_[i] = ((cx / cw) + 1) * 0.5f * width_;
+        wy_[i] = (1 - (cy / cw)) * 0.5f * height_;
+        u_[i] = vertData[vi + SpriteBatch.UV_OFFSET];
+        v_[i] = vertData[vi + SpriteBatch.UV_OFFSET + 1];
+        for(int k = 0; k < 4; k++)
+            color_[i][k] = vertData[vi + SpriteBatch.COLOR_OFFSET + k];
+    }
+
+    private void swapVertices(int i, int j)
+    {
+        float t;
+        t = wx_[i]; wx_[i] = wx_[j]; wx_[j] = t;
+        t = wy_[i]; wy_[i] = wy_[j]; wy_[j] = t;
+        t = u_[i]; u_[i] = u_[j]; u_[j] = t;
+        t = v_[i]; v_[i] = v_[j]; v_[j] = t;
+        float[] c = color_[i]; color_[i] = color_[j]; color_[j] = c;
+    }
+
+    // Twice the signed area of (a, b, p); positive on the inside once the triangle is wound
+    // consistently. Always evaluated from the same end of the edge, so that the triangle on the
+    // other side gets exactly the negated value and no pixel center falls between the two.
+    private float edge(int a, int b, float px, float py)
+    {
+        if((wx_[a] > wx_[b]) || ((wx_[a] == wx_[b]) && (wy_[a] > wy_[b])))
+            return -(((wx_[a] - wx_[b]) * (py - wy_[b])) - ((wy_[a] - wy_[b]) * (px - wx_[b])));
+        return ((wx_[b] - wx_[a]) * (py - wy_[a])) - ((wy_[b] - wy_[a]) * (px - wx_[a]));
+    }
+
+    // A pixel center exactly on an edge belongs to the triangle only for edges running one way,
+    // so of two triangles sharing that edge (and so running it in opposite directions) exactly one
+    // draws it
+    private boolean covers(float w, int a, int b)
+    {
+        if(w > 0)
+            return true;
+        if(w < 0)
+            return false;
+        float dy = wy_[b] - wy_[a];
+        return (dy > 0) || ((dy == 0) && ((wx_[b] - wx_[a]) < 0));
+    }
+
+    static private int clamp(int value, int max)
+    {
+        return (value < 0) ? 0 : ((value > max) ? max : value);
+    }
+
+    static private int pack(float r, float g, float b, float a)
+    {
+        return (channel(a) << 24) | (channel(r) << 16) | (channel(g) << 8) | channel(b);
+    }
+
+    static private int channel(float value)
+    {
+        int c = Math.round(value * 255);
+        return (c < 0) ? 0 : ((c > 255) ? 255 : c);
+    }
+}
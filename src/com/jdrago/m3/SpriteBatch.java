@@ -0,0 +1,129 @@
+package com.jdrago.m3;
+
+import java.nio.FloatBuffer;
+
+// Walks a frame's worth of render commands once, turning every run of quads that share a texture
+// into a single vertex array which is then handed to a Sink for one draw call. Positions are
+// pre-transformed on the CPU (see QuadTransform) and color is carried per-vertex, so a whole run
+// can be drawn with one set of uniforms. Nothing in here touches Android, so it runs as-is on a
+// desktop JVM.
+public class SpriteBatch
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    // Vertex layout: X, Y, U, V, R, G, B, A
+    static public final int FLOATS_PER_VERTEX = 8;
+    static public final int FLOATS_PER_QUAD = 4 * FLOATS_PER_VERTEX;
+    static public final int INDICES_PER_QUAD = 6;
+    static public final int POS_OFFSET = 0;
+    static public final int UV_OFFSET = 2;
+    static public final int COLOR_OFFSET = 4;
+
+    // Quads are indexed with unsigned shorts, so a single batch can never exceed 65536 vertices
+    static public final int MAX_QUADS = 2048;
+
+    // --------------------------------------------------------------------------------------------
+    // Sink
+
+    public interface Sink
+    {
+        // Called once per run of same-texture quads. vertData holds quadCount * FLOATS_PER_QUAD
+        // floats and is reused as soon as this returns.
+        public void drawQuads(Texture texture, float[] vertData, int quadCount);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private float[] vertData_;
+    private int quadCount_;
+    private Texture texture_;
+    private int drawCount_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public SpriteBatch()
+    {
+        vertData_ = new float[MAX_QUADS * FLOATS_PER_QUAD];
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Submission
+
+    // Returns the number of draw calls issued to the sink
+    public int submit(CommandBuffer commandBuffer, Texture[] textures, Sink sink)
+    {
+        quadCount_ = 0;
+        texture_ = null;
+        drawCount_ = 0;
+
+        FloatBuffer commands = commandBuffer.floats();
+        int quadCount = commandBuffer.quadCount();
+        int qi = 0; // quad index
+        for(int i = 0; i < quadCount; i++, qi += CommandBuffer.COMMAND_SIZE)
+        {
+            int textureIndex = (int)commands.get(qi+0);
+            if(textureIndex < 0)
+                textureIndex = 0;
+            if(textureIndex >= textures.length)
+                textureIndex = textures.length - 1;
+            Texture texture = textures[textureIndex];
+            if((texture != texture_) || (quadCount_ == MAX_QUADS))
+            {
+                flush(sink);
+                texture_ = texture;
+            }
+
+            float uvL = (float)(commands.get(qi+1) / texture.width);
+            float uvT = (float)(commands.get(qi+2) / texture.height);
+            float uvR = (float)((commands.get(qi+1) + commands.get(qi+3)) / texture.width);
+            float uvB = (float)((commands.get(qi+2) + commands.get(qi+4)) / texture.height);
+
+            float r = commands.get(qi+12);
+            float g = commands.get(qi+13);
+            float b = commands.get(qi+14);
+            float a = commands.get(qi+15);
+
+            int vi = quadCount_ * FLOATS_PER_QUAD;
+            QuadTransform.transform(commands.get(qi+5), commands.get(qi+6),
+                                    commands.get(qi+7), commands.get(qi+8),
+                                    commands.get(qi+9),
+                                    commands.get(qi+10), commands.get(qi+11),
+                                    vertData_, vi + POS_OFFSET, FLOATS_PER_VERTEX);
+            vi = putAttributes(vi, uvL, uvT, r, g, b, a);
+            vi = putAttributes(vi, uvR, uvT, r, g, b, a);
+            vi = putAttributes(vi, uvR, uvB, r, g, b, a);
+            vi = putAttributes(vi, uvL, uvB, r, g, b, a);
+            quadCount_++;
+        }
+        flush(sink);
+        return drawCount_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    // Fills in everything but the position, which QuadTransform has already written
+    private int putAttributes(int vi, float u, float v, float r, float g, float b, float a)
+    {
+        vertData_[vi + UV_OFFSET] = u;
+        vertData_[vi + UV_OFFSET + 1] = v;
+        vertData_[vi + COLOR_OFFSET] = r;
+        vertData_[vi + COLOR_OFFSET + 1] = g;
+        vertData_[vi + COLOR_OFFSET + 2] = b;
+        vertData_[vi + COLOR_OFFSET + 3] = a;
+        return vi + FLOATS_PER_VERTEX;
+    }
+
+    private void flush(Sink sink)
+    {
+        if(quadCount_ > 0)
+        {
+            sink.drawQuads(texture_, vertData_, quadCount_);
+            drawCount_++;
+        }
+        quadCount_ = 0;
+    }
+}
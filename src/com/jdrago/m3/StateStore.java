@@ -0,0 +1,209 @@
+package com.jdrago.m3;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Reads and writes the saved game (a Snapshot) on its own background thread, so neither the UI
+// thread nor the sim thread ever waits on storage:
+//
+// * autosave() keeps only the newest snapshot and writes it AUTOSAVE_DELAY_MS after the first
+//   change that isn't on disk yet, so a burst of moves costs one write
+// * save() writes the newest snapshot as soon as possible (for onPause)
+// * restore() reads the file and hands the result to a listener, on the background thread
+//
+// Writes go to a temp file that is synced and renamed over the save, so a crash or a kill mid-write
+// leaves the previous save intact.
+public class StateStore
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final String TAG = "M3";
+    static private final long AUTOSAVE_DELAY_MS = 2000;
+
+    // --------------------------------------------------------------------------------------------
+    // Types
+
+    public interface Listener
+    {
+        // Called on the store's thread; snapshot is null if there is no usable save
+        void onRestored(Snapshot snapshot);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private File file_;
+    private ScheduledExecutorService executor_;
+    private final Object lock_ = new Object();
+    private Snapshot pending_;   // guarded by lock_: newest snapshot not yet handed to a write
+    private boolean scheduled_;  // guarded by lock_: a write is queued that will pick up pending_
+
+    private Runnable write_ = new Runnable() {
+        @Override
+        public void run() {
+            Snapshot snapshot;
+            synchronized(lock_)
+            {
+                snapshot = pending_;
+                pending_ = null;
+                scheduled_ = false;
+            }
+            if(snapshot != null)
+                write(snapshot);
+        }
+    };
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    public StateStore(File file)
+    {
+        file_ = file;
+        executor_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "M3 state");
+                return thread;
+            }
+        });
+    }
+
+    // Lets queued writes finish, then stops the thread
+    public void shutdown()
+    {
+        executor_.shutdown();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Saving
+
+    // snapshot now belongs to the store; don't modify it afterwards
+    public void autosave(Snapshot snapshot)
+    {
+        synchronized(lock_)
+        {
+            pending_ = snapshot;
+            if(scheduled_)
+                return;
+            scheduled_ = true;
+        }
+        executor_.schedule(write_, AUTOSAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // As autosave(), without the delay
+    public void save(Snapshot snapshot)
+    {
+        synchronized(lock_)
+        {
+            pending_ = snapshot;
+            scheduled_ = true;
+        }
+        executor_.execute(write_);
+    }
+
+    private void write(Snapshot snapshot)
+    {
+        long start = System.nanoTime();
+        byte[] data = snapshot.encode();
+        File temp = new File(file_.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if(!temp.renameTo(file_))
+            {
+                Log.w(TAG, "Can't rename save into place");
+                return;
+            }
+            Log.d(TAG, "Saved " + data.length + " bytes in " + ((System.nanoTime() - start) / 1000) + " us");
+        }
+        catch(IOException e)
+        {
+            Log.w(TAG, "Failed to save: " + e.getMessage());
+        }
+        finally
+        {
+            if(out != null)
+            {
+                try
+                {
+                    out.close();
+                } catch (IOException e)
+                {
+                    // Ignore.
+                }
+            }
+            temp.delete();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Restoring
+
+    public void restore(final Listener listener)
+    {
+        executor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onRestored(read());
+            }
+        });
+    }
+
+    private Snapshot read()
+    {
+        if(!file_.isFile())
+            return null;
+
+        FileInputStream in = null;
+        try
+        {
+            in = new FileInputStream(file_);
+            ByteArrayOutputStream data = new ByteArrayOutputStream(64);
+            byte[] chunk = new byte[256];
+            int len;
+            while((len = in.read(chunk)) != -1)
+                data.write(chunk, 0, len);
+            return Snapshot.decode(data.toByteArray());
+        }
+        catch(IOException e)
+        {
+            Log.w(TAG, "Ignoring unreadable save: " + e.getMessage());
+            return null;
+        }
+        finally
+        {
+            if(in != null)
+            {
+                try
+                {
+                    in.close();
+                } catch (IOException e)
+                {
+                    // Ignore.
+                }
+            }
+        }
+    }
+}
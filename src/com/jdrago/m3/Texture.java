@@ -0,0 +1,10 @@
+package com.jdrago.m3;
+
+public class Texture
+{
+    public int id;
+    public double width;
+    public double height;
+    public int levels; // mip levels uploaded
+    public int bytes;  // GPU memory held, across all levels
+}
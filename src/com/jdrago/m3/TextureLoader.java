@@ -0,0 +1,280 @@
+package com.jdrago.m3;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Loads asset pack entries into GL textures, preferring a precompressed KTX container (ETC1/ETC2,
+// with its full mip chain) and falling back to decoding the PNG. For a texture named "atlas0":
+//
+// * atlas0_etc2.ktx is used if the pack has it and its format is one the driver lists in
+//   GL_COMPRESSED_TEXTURE_FORMATS (ETC2 is core in GLES3, ETC1 is the OES extension). Each mip
+//   level is uploaded straight from the pack's mapping.
+// * Otherwise atlas0.png is decoded from the mapping, uploaded as RGBA8888 and mipmapped on the
+//   GPU.
+//
+// Every loaded texture is minified with trilinear filtering and reports the GPU memory it holds
+// (Texture.bytes) and how long it took. Must be used on a thread with a current GL context.
+public class TextureLoader
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static private final String TAG = "M3";
+
+    static private final String COMPRESSED_SUFFIX = "_etc2";
+
+    // Compressed formats we know the names of, for logging
+    static private final int GL_ETC1_RGB8_OES = 0x8D64;
+    static private final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    static private final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+    static private final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+    static private final byte[] KTX_IDENTIFIER = {
+        (byte)0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte)0xBB, '\r', '\n', 0x1A, '\n' };
+    static private final int KTX_ENDIANNESS = 0x04030201;
+    static private final int KTX_HEADER_SIZE = 64;
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private AssetPack pack_;
+    private int[] compressedFormats_;
+    private long totalBytes_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // Queries the current context's compressed formats, so create one per context
+    public TextureLoader(AssetPack pack)
+    {
+        pack_ = pack;
+
+        int[] count = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+        compressedFormats_ = new int[count[0]];
+        if(count[0] > 0)
+            GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, compressedFormats_, 0);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Loading
+
+    public Texture load(String name)
+    {
+        long start = System.nanoTime();
+        Texture texture = null;
+        ByteBuffer ktx = pack_.entry(name + COMPRESSED_SUFFIX + ".ktx");
+        if(ktx != null)
+            texture = loadKTX(name, ktx, start);
+        if(texture == null)
+        {
+            InputStream png = pack_.stream(name + ".png");
+            if(png == null)
+                throw new RuntimeException("Texture missing: " + name);
+            texture = loadPNG(name, png, start);
+        }
+        totalBytes_ += texture.bytes;
+        return texture;
+    }
+
+    // Total GPU memory of every texture this loader has created
+    public long totalBytes()
+    {
+        return totalBytes_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // PNG
+
+    private Texture loadPNG(String name, InputStream png, long start)
+    {
+        Bitmap bitmap = BitmapFactory.decodeStream(png);
+        if(bitmap == null)
+            throw new RuntimeException("Texture " + name + ": PNG won't decode");
+
+        Texture texture = new Texture();
+        texture.id = createTexture();
+        texture.width = (double)bitmap.getWidth();
+        texture.height = (double)bitmap.getHeight();
+
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+        texture.levels = mipLevelCount(bitmap.getWidth(), bitmap.getHeight());
+        texture.bytes = 0;
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        for(int level = 0; level < texture.levels; level++)
+        {
+            texture.bytes += w * h * 4;
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        bitmap.recycle();
+
+        setFilters(texture.levels);
+        checkGlError("loadPNG " + name);
+        logTexture(name, texture, "PNG RGBA8888", start);
+        return texture;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // KTX
+
+    // Returns null (after logging why) if the file can't be used on this device, so the caller
+    // can fall back to the PNG
+    private Texture loadKTX(String name, ByteBuffer ktx, long start)
+    {
+        if(ktx.capacity() < KTX_HEADER_SIZE)
+        {
+            Log.w(TAG, name + ": KTX truncated, using PNG");
+            return null;
+        }
+        for(int i = 0; i < KTX_IDENTIFIER.length; i++)
+        {
+            if(ktx.get(i) != KTX_IDENTIFIER[i])
+            {
+                Log.w(TAG, name + ": not a KTX 1.1 file, using PNG");
+                return null;
+            }
+        }
+
+        ktx.order(ByteOrder.LITTLE_ENDIAN);
+        if(ktx.getInt(12) != KTX_ENDIANNESS)
+            ktx.order(ByteOrder.BIG_ENDIAN);
+        int glType = ktx.getInt(16);
+        int glInternalFormat = ktx.getInt(28);
+        int width = ktx.getInt(36);
+        int height = ktx.getInt(40);
+        int depth = ktx.getInt(44);
+        int arrayElements = ktx.getInt(48);
+        int faces = ktx.getInt(52);
+        int levels = Math.max(1, ktx.getInt(56));
+        int keyValueBytes = ktx.getInt(60);
+
+        if((glType != 0) || (depth > 1) || (arrayElements > 1) || (faces > 1))
+        {
+            Log.w(TAG, name + ": only compressed 2D KTX textures are supported, using PNG");
+            return null;
+        }
+        if(!isCompressedFormatSupported(glInternalFormat))
+        {
+            Log.d(TAG, name + ": " + formatName(glInternalFormat) + " not supported by this GPU, using PNG");
+            return null;
+        }
+
+        Texture texture = new Texture();
+        texture.id = createTexture();
+        texture.width = (double)width;
+        texture.height = (double)height;
+        texture.levels = levels;
+        texture.bytes = 0;
+
+        int offset = KTX_HEADER_SIZE + keyValueBytes;
+        int w = width;
+        int h = height;
+        for(int level = 0; level < levels; level++)
+        {
+            int imageSize = ktx.getInt(offset);
+            offset += 4;
+            if(offset + imageSize > ktx.capacity())
+            {
+                GLES20.glDeleteTextures(1, new int[] { texture.id }, 0);
+                Log.w(TAG, name + ": KTX truncated at mip level " + level + ", using PNG");
+                return null;
+            }
+            ktx.limit(offset + imageSize);
+            ktx.position(offset);
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, glInternalFormat, w, h, 0, imageSize, ktx.slice());
+            ktx.clear();
+            texture.bytes += imageSize;
+            offset += (imageSize + 3) & ~3; // mipPadding
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+
+        setFilters(levels);
+        checkGlError("loadKTX " + name);
+        logTexture(name, texture, formatName(glInternalFormat), start);
+        return texture;
+    }
+
+    private boolean isCompressedFormatSupported(int format)
+    {
+        for(int i = 0; i < compressedFormats_.length; i++)
+        {
+            if(compressedFormats_[i] == format)
+                return true;
+        }
+        return false;
+    }
+
+    static private String formatName(int format)
+    {
+        switch(format)
+        {
+            case GL_ETC1_RGB8_OES: return "ETC1 RGB";
+            case GL_COMPRESSED_RGB8_ETC2: return "ETC2 RGB";
+            case GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2: return "ETC2 RGB A1";
+            case GL_COMPRESSED_RGBA8_ETC2_EAC: return "ETC2 RGBA";
+        }
+        return "format 0x" + Integer.toHexString(format);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    private int createTexture()
+    {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        return textures[0];
+    }
+
+    // Sprites are nearly always drawn smaller than their source rect (80px gem cells scaled to
+    // gemSize), so minify through the mip chain when there is one
+    private void setFilters(int levels)
+    {
+        int minFilter = (levels > 1) ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR;
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    }
+
+    static private int mipLevelCount(int width, int height)
+    {
+        int levels = 1;
+        int size = Math.max(width, height);
+        while(size > 1)
+        {
+            size /= 2;
+            levels++;
+        }
+        return levels;
+    }
+
+    private void logTexture(String name, Texture texture, String format, long start)
+    {
+        Log.d(TAG, "Texture " + name + ": " + (int)texture.width + "x" + (int)texture.height + " " + format
+              + ", " + texture.levels + " level(s), " + (texture.bytes / 1024) + " KB, "
+              + ((System.nanoTime() - start) / 1000) + " us");
+    }
+
+    static private void checkGlError(String op)
+    {
+        int error;
+        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR)
+        {
+            Log.e(TAG, op + ": glError " + error);
+            throw new RuntimeException(op + ": glError " + error);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.jdrago.m3.egl;
 
 import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGL11;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.egl.EGLDisplay;
@@ -8,6 +9,8 @@ import javax.microedition.khronos.egl.EGLSurface;
 import javax.microedition.khronos.opengles.GL11;
 
 import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.os.Build;
 import android.os.Looper;
 
 import com.jdrago.m3.GLTextureView.EGLConfigChooser;
@@ -70,6 +73,16 @@ public class EGLManager {
      */
     GL11 gl11 = null;
 
+    /**
+     * context attributes, reused for shared contexts
+     */
+    int[] contextAttributes = null;
+
+    /**
+     * the only thread that uses the rendering context, in thread-affine mode
+     */
+    Thread owner = null;
+
     public EGLManager() {
     }
 
@@ -113,8 +126,9 @@ public class EGLManager {
 
             // コンテキスト作成
             {
+                contextAttributes = version.getContextAttributes();
                 eglContext = egl.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT,
-                        version.getContextAttributes());
+                        contextAttributes);
 
                 if (eglContext == EGL10.EGL_NO_CONTEXT) {
                     throw new RuntimeException("eglCreateContext");
@@ -127,6 +141,17 @@ public class EGLManager {
         }
     }
 
+    /**
+     * Thread-affine mode: from now on only the calling thread binds, swaps and changes surfaces,
+     * so {@link #swapBuffers()} skips the lock on it. The shared context helpers still lock and
+     * may be used from any thread.
+     */
+    public void setOwnerThread() {
+        synchronized (lock) {
+            owner = Thread.currentThread();
+        }
+    }
+
     /**
      * get GL11 object
      * @return
@@ -171,6 +196,52 @@ public class EGLManager {
         }
     }
 
+    /**
+     * Destroys the window surface only, keeping the context and everything created in it. The
+     * next {@link #resize(SurfaceTexture)} attaches a new surface to the same context.
+     */
+    public void destroySurface() {
+        synchronized (lock) {
+            if (egl == null) {
+                return;
+            }
+
+            if (eglSurface != null) {
+                egl.eglDestroySurface(eglDisplay, eglSurface);
+                eglSurface = null;
+            }
+        }
+    }
+
+    /**
+     * Replaces a lost context with a new one on the same display and config. Every object the old
+     * context held is gone, and so is sharing with any context created from it.
+     */
+    public void recreateContext() {
+        synchronized (lock) {
+            egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (eglContext != null) {
+                egl.eglDestroyContext(eglDisplay, eglContext);
+            }
+
+            eglContext = egl.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, contextAttributes);
+            if (eglContext == EGL10.EGL_NO_CONTEXT) {
+                throw new RuntimeException("eglCreateContext");
+            }
+            if (gl11 != null) {
+                gl11 = (GL11) eglContext.getGL();
+            }
+        }
+    }
+
+    /**
+     * True if the EGL call that just failed on this thread (bind() or swapBuffers() returning
+     * false) failed because the context was lost, e.g. after a GPU reset or a long suspend.
+     */
+    public boolean isContextLost() {
+        return egl.eglGetError() == EGL11.EGL_CONTEXT_LOST;
+    }
+
     /**
      * 解放処理を行う
      */
@@ -196,9 +267,9 @@ public class EGLManager {
     /**
      * ES20コンテキストを専有する
      */
-    public void bind() {
+    public boolean bind() {
         synchronized (lock) {
-            egl.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext);
+            return egl.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext);
         }
     }
 
@@ -234,10 +305,79 @@ public class EGLManager {
         }
     }
 
+    /**
+     * Creates a context sharing textures and buffers with the rendering context, for a worker
+     * thread to upload resources on. Returns EGL_NO_CONTEXT if the driver refuses.
+     */
+    public EGLContext createSharedContext() {
+        synchronized (lock) {
+            return egl.eglCreateContext(eglDisplay, eglConfig, eglContext, contextAttributes);
+        }
+    }
+
+    /**
+     * A 1x1 pbuffer for a shared context to be current against. Returns EGL_NO_SURFACE if the
+     * config can't do pbuffers, in which case binding with no surface at all
+     * (EGL_KHR_surfaceless_context) is the remaining option.
+     */
+    public EGLSurface createSharedSurface() {
+        synchronized (lock) {
+            int[] attributes = {
+                    EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE
+            };
+            return egl.eglCreatePbufferSurface(eglDisplay, eglConfig, attributes);
+        }
+    }
+
+    /**
+     * Makes a shared context current on the calling thread. Returns false on failure.
+     */
+    public boolean bindShared(EGLContext context, EGLSurface surface) {
+        synchronized (lock) {
+            return egl.eglMakeCurrent(eglDisplay, surface, surface, context);
+        }
+    }
+
+    /**
+     * Releases the calling thread's shared context and destroys it. Must be called before
+     * {@link #destroy()}.
+     */
+    public void destroyShared(EGLContext context, EGLSurface surface) {
+        synchronized (lock) {
+            if (egl == null) {
+                return;
+            }
+            egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (surface != EGL10.EGL_NO_SURFACE) {
+                egl.eglDestroySurface(eglDisplay, surface);
+            }
+            if (context != EGL10.EGL_NO_CONTEXT) {
+                egl.eglDestroyContext(eglDisplay, context);
+            }
+        }
+    }
+
+    /**
+     * Sets how many vsyncs eglSwapBuffers waits for. Needs the context current, and EGL14
+     * (API 17+); returns false if it couldn't be set.
+     */
+    public boolean setSwapInterval(int interval) {
+        synchronized (lock) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                return false;
+            }
+            return EGL14.eglSwapInterval(EGL14.eglGetCurrentDisplay(), interval);
+        }
+    }
+
     /**
      * レンダリング内容をフロントバッファへ転送する
      */
     public boolean swapBuffers() {
+        if (owner == Thread.currentThread()) {
+            // thread-affine: nothing else touches the surface
+            return egl.eglSwapBuffers(eglDisplay, eglSurface);
+        }
         synchronized (lock) {
             return egl.eglSwapBuffers(eglDisplay, eglSurface);
         }
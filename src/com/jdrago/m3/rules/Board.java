@@ -0,0 +1,512 @@
+package com.jdrago.m3.rules;
+
+// The match-3 rules from game/Grid.coffee, on bitboards. The 8x8 board is one 64-bit mask per gem
+// type, with cell (x, y) at bit (x * 8) + y: each byte is a column, y = 0 at the bottom. That
+// layout makes vertical runs shifts by 1 within a byte, horizontal runs shifts by 8, and gravity
+// a per-column compaction of one byte.
+//
+// The rules, as Grid.coffee has them:
+//
+// * Any straight run of 3+ gems of one type matches. Each gem in a match scores the length of
+//   its horizontal run plus the length of its vertical run (counting only runs of 3+).
+// * Shattering removes every matched gem. Each regular gem (RED..ORANGE) adds max(score - 2, 1)
+//   progress; if any bells matched, turns += 1 + (bells / 2).
+// * The survivors in each column fall, and the column is refilled from the top at random.
+// * A move slides the gem at (srcX, srcY) along its row or column to (dstX, dstY), shifting
+//   the gems in between back one place. It's only legal if the result has a match, and costs a
+//   turn. The match then shatters, and so does every match the refill creates (a cascade),
+//   one round at a time.
+//
+// Nothing here allocates after construction. Not thread-safe; give each thread its own Board
+// (copyFrom() is cheap).
+public class Board
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    static public final int SIZE = 8;
+    static public final int CELLS = SIZE * SIZE;
+
+    static public final int RED = 0;
+    static public final int GREEN = 1;
+    static public final int BLUE = 2;
+    static public final int ORANGE = 3;
+    static public final int BELL = 4;
+    static public final int PINK = 5;
+    static public final int BROKEN = 6;
+    static public final int TYPE_COUNT = 7;
+    static public final int REGULAR_TYPE_COUNT = 4; // RED..ORANGE score progress
+
+    static public final int STARTING_TURNS = 20;
+
+    // Cells that can start a vertical run of 3 (y <= 5 in every column)
+    static private final long VERTICAL_STARTS = 0x3F3F3F3F3F3F3F3FL;
+
+    // For each byte (a column or, transposed, a row): the length of the run each bit is part of,
+    // one nibble per bit, counting only runs of 3+
+    static private final int[] RUN_LENGTHS = new int[256];
+
+    // COMPACT[(keep << 8) | bits]: bits with every position not in keep removed and the rest
+    // shifted down, i.e. one column after gravity
+    static private final byte[] COMPACT = new byte[256 * 256];
+
+    static
+    {
+        for(int bits = 0; bits < 256; bits++)
+        {
+            int packed = 0;
+            int i = 0;
+            while(i < SIZE)
+            {
+                int len = 0;
+                while((i + len < SIZE) && ((bits & (1 << (i + len))) != 0))
+                    len++;
+                if(len >= 3)
+                {
+                    for(int k = i; k < i + len; k++)
+                        packed |= len << (k * 4);
+                }
+                i += Math.max(len, 1);
+            }
+            RUN_LENGTHS[bits] = packed;
+        }
+
+        for(int keep = 0; keep < 256; keep++)
+        {
+            for(int bits = 0; bits < 256; bits++)
+            {
+                int out = 0;
+                int o = 0;
+                for(int i = 0; i < SIZE; i++)
+                {
+                    if((keep & (1 << i)) != 0)
+                    {
+                        if((bits & (1 << i)) != 0)
+                            out |= 1 << o;
+                        o++;
+                    }
+                }
+                COMPACT[(keep << 8) | bits] = (byte)out;
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private long[] types_ = new long[TYPE_COUNT];
+    private int turns_;
+    private int progress_;
+    private long seed_;
+
+    // Results of the last shatter()/move()
+    private int lastCleared_;
+    private int lastProgress_;
+    private int lastTurnsGained_;
+    private int lastCascades_;
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // seed drives every refill, so a seed plus a sequence of moves always plays out the same
+    public Board(long seed)
+    {
+        seed_ = seed;
+    }
+
+    public void copyFrom(Board other)
+    {
+        System.arraycopy(other.types_, 0, types_, 0, TYPE_COUNT);
+        turns_ = other.turns_;
+        progress_ = other.progress_;
+        seed_ = other.seed_;
+        lastCleared_ = other.lastCleared_;
+        lastProgress_ = other.lastProgress_;
+        lastTurnsGained_ = other.lastTurnsGained_;
+        lastCascades_ = other.lastCascades_;
+    }
+
+    // A fresh board: filled at random, starting matches shattered away, turns and progress reset
+    public void newGame()
+    {
+        clear();
+        for(int x = 0; x < SIZE; x++)
+            refillColumn(x, 0);
+        resolve();
+        turns_ = STARTING_TURNS;
+        progress_ = 0;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // State
+
+    static public int cell(int x, int y)
+    {
+        return (x * SIZE) + y;
+    }
+
+    public int type(int x, int y)
+    {
+        long bit = 1L << cell(x, y);
+        for(int t = 0; t < TYPE_COUNT; t++)
+        {
+            if((types_[t] & bit) != 0)
+                return t;
+        }
+        return -1;
+    }
+
+    // Empties every cell; an empty cell never matches
+    public void clear()
+    {
+        for(int t = 0; t < TYPE_COUNT; t++)
+            types_[t] = 0;
+    }
+
+    public void setType(int x, int y, int type)
+    {
+        long bit = 1L << cell(x, y);
+        for(int t = 0; t < TYPE_COUNT; t++)
+            types_[t] &= ~bit;
+        types_[type] |= bit;
+    }
+
+    // The bitboard for one type (bit cell(x, y))
+    public long bits(int type)
+    {
+        return types_[type];
+    }
+
+    public int turns()
+    {
+        return turns_;
+    }
+
+    public void setTurns(int turns)
+    {
+        turns_ = turns;
+    }
+
+    public int progress()
+    {
+        return progress_;
+    }
+
+    public void setProgress(int progress)
+    {
+        progress_ = progress;
+    }
+
+    public long seed()
+    {
+        return seed_;
+    }
+
+    public void setSeed(long seed)
+    {
+        seed_ = seed;
+    }
+
+    // Mixes the bitboards into one value, for transposition tables. Turns, progress and the seed
+    // are not included.
+    public long hash()
+    {
+        long h = 0;
+        for(int t = 0; t < TYPE_COUNT; t++)
+            h = mix(h ^ types_[t] ^ (t * 0x9E3779B97F4A7C15L));
+        return h;
+    }
+
+    public boolean sameCells(Board other)
+    {
+        for(int t = 0; t < TYPE_COUNT; t++)
+        {
+            if(types_[t] != other.types_[t])
+                return false;
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Matching
+
+    // Every cell that is part of a run of 3+
+    public long matches()
+    {
+        long matched = 0;
+        for(int t = 0; t < TYPE_COUNT; t++)
+            matched |= matches(types_[t]);
+        return matched;
+    }
+
+    static private long matches(long b)
+    {
+        long v = b & (b >>> 1) & (b >>> 2) & VERTICAL_STARTS;
+        long h = b & (b >>> 8) & (b >>> 16);
+        return v | (v << 1) | (v << 2) | h | (h << 8) | (h << 16);
+    }
+
+    // Grid.coffee's per-gem score (horizontal run + vertical run, 3+ only) for every cell, into
+    // scores[cell(x, y)]; 0 for unmatched cells. Returns true if anything matched.
+    public boolean scores(int[] scores)
+    {
+        for(int i = 0; i < CELLS; i++)
+            scores[i] = 0;
+        boolean any = false;
+        for(int t = 0; t < TYPE_COUNT; t++)
+        {
+            long b = types_[t];
+            long matched = matches(b);
+            if(matched == 0)
+                continue;
+            any = true;
+            long rows = transpose(b);
+            while(matched != 0)
+            {
+                int cell = Long.numberOfTrailingZeros(matched);
+                matched &= matched - 1;
+                scores[cell] = cellScore(b, rows, cell);
+            }
+        }
+        return any;
+    }
+
+    static private int cellScore(long columns, long rows, int cell)
+    {
+        int x = cell >>> 3;
+        int y = cell & 7;
+        int vertical = (RUN_LENGTHS[(int)(columns >>> (x * 8)) & 0xff] >>> (y * 4)) & 0xf;
+        int horizontal = (RUN_LENGTHS[(int)(rows >>> (y * 8)) & 0xff] >>> (x * 4)) & 0xf;
+        return vertical + horizontal;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Moves
+
+    // Slides (srcX, srcY) to (dstX, dstY) as Grid.move does, without checking anything. The two
+    // cells must share a row or a column.
+    public void slide(int srcX, int srcY, int dstX, int dstY)
+    {
+        if((srcX == dstX) && (srcY == dstY))
+            return;
+        long segment = segment(srcX, srcY, dstX, dstY);
+        long moving = 1L << cell(srcX, srcY);
+        int step = (srcX == dstX) ? 1 : SIZE;
+        int span = cell(dstX, dstY) - cell(srcX, srcY);
+        for(int t = 0; t < TYPE_COUNT; t++)
+            types_[t] = slid(types_[t], segment, moving, step, span);
+    }
+
+    // True if sliding (srcX, srcY) to (dstX, dstY) would make a match. Works out each type's
+    // bits after the slide without writing them back, so the board is never touched.
+    public boolean isLegal(int srcX, int srcY, int dstX, int dstY)
+    {
+        if(((srcX != dstX) && (srcY != dstY)) || ((srcX == dstX) && (srcY == dstY)))
+            return false;
+        long segment = segment(srcX, srcY, dstX, dstY);
+        long moving = 1L << cell(srcX, srcY);
+        int step = (srcX == dstX) ? 1 : SIZE;
+        int span = cell(dstX, dstY) - cell(srcX, srcY);
+        for(int t = 0; t < TYPE_COUNT; t++)
+        {
+            if(matches(slid(types_[t], segment, moving, step, span)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    // The cells from (srcX, srcY) to (dstX, dstY) inclusive, which share a row or a column
+    static private long segment(int srcX, int srcY, int dstX, int dstY)
+    {
+        if(srcX == dstX)
+        {
+            int lo = Math.min(srcY, dstY);
+            int hi = Math.max(srcY, dstY);
+            return ((1L << (hi - lo + 1)) - 1) << cell(srcX, lo);
+        }
+        long segment = 0;
+        for(int x = Math.min(srcX, dstX); x <= Math.max(srcX, dstX); x++)
+            segment |= 1L << cell(x, srcY);
+        return segment;
+    }
+
+    // One type's bits after a slide: the bit at moving (the source cell) travels span bit
+    // positions to the destination, and every other bit in the segment shifts one cell (step
+    // bit positions) back towards the source to fill in
+    static private long slid(long b, long segment, long moving, int step, int span)
+    {
+        long s = b & segment;
+        if(s == 0)
+            return b;
+        long gem = s & moving;
+        long rest = s & ~moving;
+        long rotated;
+        if(span > 0)
+            rotated = (rest >>> step) | (gem << span);
+        else
+            rotated = (rest << step) | (gem >>> -span);
+        return (b & ~segment) | rotated;
+    }
+
+    // Plays a move: if it's legal and there are turns left, slides, spends a turn and resolves
+    // every cascade, then returns true (see lastCascades() and friends for what it did).
+    // Otherwise leaves the board alone and returns false.
+    public boolean move(int srcX, int srcY, int dstX, int dstY)
+    {
+        if((turns_ <= 0) || !isLegal(srcX, srcY, dstX, dstY))
+            return false;
+        slide(srcX, srcY, dstX, dstY);
+        turns_--;
+        resolve();
+        return true;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Shattering
+
+    // Shatters matches round after round until the board is stable. Returns the number of rounds
+    // (0 if there was nothing to do); the last* counters cover all of them.
+    public int resolve()
+    {
+        int cleared = 0;
+        int progress = 0;
+        int turnsGained = 0;
+        int rounds = 0;
+        while(shatter())
+        {
+            cleared += lastCleared_;
+            progress += lastProgress_;
+            turnsGained += lastTurnsGained_;
+            rounds++;
+        }
+        lastCleared_ = cleared;
+        lastProgress_ = progress;
+        lastTurnsGained_ = turnsGained;
+        lastCascades_ = rounds;
+        return rounds;
+    }
+
+    // One round, as Grid.shatter: scores the current matches, removes them, drops and refills.
+    // Returns false (and does nothing) if nothing matched.
+    public boolean shatter()
+    {
+        long matched = 0;
+        int progress = 0;
+        int bells = 0;
+        for(int t = 0; t < TYPE_COUNT; t++)
+        {
+            long b = types_[t];
+            long m = matches(b);
+            if(m == 0)
+                continue;
+            matched |= m;
+            if(t < REGULAR_TYPE_COUNT)
+            {
+                long rows = transpose(b);
+                while(m != 0)
+                {
+                    int cell = Long.numberOfTrailingZeros(m);
+                    m &= m - 1;
+                    progress += Math.max(cellScore(b, rows, cell) - 2, 1);
+                }
+            }
+            else if(t == BELL)
+            {
+                bells += Long.bitCount(m);
+            }
+        }
+        if(matched == 0)
+        {
+            lastCleared_ = 0;
+            lastProgress_ = 0;
+            lastTurnsGained_ = 0;
+            return false;
+        }
+
+        int turnsGained = (bells > 0) ? 1 + (bells >> 1) : 0;
+        progress_ += progress;
+        turns_ += turnsGained;
+        lastCleared_ = Long.bitCount(matched);
+        lastProgress_ = progress;
+        lastTurnsGained_ = turnsGained;
+
+        // Gravity: each column keeps its unmatched gems, in order, at the bottom
+        for(int x = 0; x < SIZE; x++)
+        {
+            int shift = x * SIZE;
+            int keep = ~(int)(matched >>> shift) & 0xff;
+            if(keep == 0xff)
+                continue;
+            long column = 0xffL << shift;
+            for(int t = 0; t < TYPE_COUNT; t++)
+            {
+                int bits = (int)(types_[t] >>> shift) & 0xff;
+                long compacted = COMPACT[(keep << 8) | bits] & 0xffL;
+                types_[t] = (types_[t] & ~column) | (compacted << shift);
+            }
+            refillColumn(x, Integer.bitCount(keep));
+        }
+        return true;
+    }
+
+    // Gems cleared, progress and turns gained by the last shatter(), or (after resolve() or
+    // move()) by all of its rounds together
+    public int lastCleared()
+    {
+        return lastCleared_;
+    }
+
+    public int lastProgress()
+    {
+        return lastProgress_;
+    }
+
+    public int lastTurnsGained()
+    {
+        return lastTurnsGained_;
+    }
+
+    // Rounds in the last resolve()/move(); 1 means no cascade
+    public int lastCascades()
+    {
+        return lastCascades_;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Internals
+
+    // Fills column x from height `from` to the top with random gems
+    private void refillColumn(int x, int from)
+    {
+        for(int y = from; y < SIZE; y++)
+            types_[randomType()] |= 1L << cell(x, y);
+    }
+
+    private int randomType()
+    {
+        // SplitMix64
+        seed_ += 0x9E3779B97F4A7C15L;
+        long z = mix(seed_);
+        return (int)(((z >>> 32) * TYPE_COUNT) >>> 32);
+    }
+
+    static private long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // 8x8 bit matrix transpose: bit (x * 8) + y moves to (y * 8) + x, turning columns into rows
+    static long transpose(long b)
+    {
+        long t;
+        t = (b ^ (b >>> 7)) & 0x00AA00AA00AA00AAL;
+        b = b ^ t ^ (t << 7);
+        t = (b ^ (b >>> 14)) & 0x0000CCCC0000CCCCL;
+        b = b ^ t ^ (t << 14);
+        t = (b ^ (b >>> 28)) & 0x00000000F0F0F0F0L;
+        b = b ^ t ^ (t << 28);
+        return b;
+    }
+}
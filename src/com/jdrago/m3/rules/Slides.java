@@ -0,0 +1,92 @@
+package com.jdrago.m3.rules;
+
+// Every distinct slide on the board, indexed 0..COUNT-1: each cell to every other cell in its row
+// and its column. Sliding a gem onto its neighbour swaps the two, which is the same move from
+// either end, so those are listed once.
+public class Slides
+{
+    static public final int COUNT;
+
+    static private final byte[] SRC_X;
+    static private final byte[] SRC_Y;
+    static private final byte[] DST_X;
+    static private final byte[] DST_Y;
+
+    static
+    {
+        int count = 0;
+        byte[] sx = new byte[Board.CELLS * 2 * (Board.SIZE - 1)];
+        byte[] sy = new byte[sx.length];
+        byte[] dx = new byte[sx.length];
+        byte[] dy = new byte[sx.length];
+        for(int x = 0; x < Board.SIZE; x++)
+        {
+            for(int y = 0; y < Board.SIZE; y++)
+            {
+                for(int d = 0; d < Board.SIZE; d++)
+                {
+                    // Along the row, then along the column
+                    if((d != x) && ((Math.abs(d - x) > 1) || (d > x)))
+                    {
+                        sx[count] = (byte)x; sy[count] = (byte)y; dx[count] = (byte)d; dy[count] = (byte)y;
+                        count++;
+                    }
+                    if((d != y) && ((Math.abs(d - y) > 1) || (d > y)))
+                    {
+                        sx[count] = (byte)x; sy[count] = (byte)y; dx[count] = (byte)x; dy[count] = (byte)d;
+                        count++;
+                    }
+                }
+            }
+        }
+        COUNT = count;
+        SRC_X = sx;
+        SRC_Y = sy;
+        DST_X = dx;
+        DST_Y = dy;
+    }
+
+    static public int srcX(int slide)
+    {
+        return SRC_X[slide];
+    }
+
+    static public int srcY(int slide)
+    {
+        return SRC_Y[slide];
+    }
+
+    static public int dstX(int slide)
+    {
+        return DST_X[slide];
+    }
+
+    static public int dstY(int slide)
+    {
+        return DST_Y[slide];
+    }
+
+    // Board.slide() for a slide index
+    static public void apply(Board board, int slide)
+    {
+        board.slide(SRC_X[slide], SRC_Y[slide], DST_X[slide], DST_Y[slide]);
+    }
+
+    // Board.move() for a slide index
+    static public boolean play(Board board, int slide)
+    {
+        return board.move(SRC_X[slide], SRC_Y[slide], DST_X[slide], DST_Y[slide]);
+    }
+
+    // Writes the legal slides on board into out (which needs COUNT entries) and returns how many
+    static public int legal(Board board, int[] out)
+    {
+        int count = 0;
+        for(int slide = 0; slide < COUNT; slide++)
+        {
+            if(board.isLegal(SRC_X[slide], SRC_Y[slide], DST_X[slide], DST_Y[slide]))
+                out[count++] = slide;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,441 @@
+package com.jdrago.m3.rules;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Ranks every legal slide on a Board by what it's expected to be worth, for hints and auto-play.
+//
+// A slide's value is the progress it makes plus turnValue() for every turn it wins back, over the
+// whole cascade. The first shatter is fixed by the board; everything after it depends on the
+// refills, so each position is played out several times with different refills and the values
+// averaged. solve() works in rounds: the first round plays every legal slide once (and always
+// finishes, so there is always a ranking), each later round adds one more refill sample to every
+// position, until the time budget or maxSamples() runs out.
+//
+// Rounds are spread across a fork/join pool. Positions are deduplicated through a transposition
+// table keyed by Board.hash(): slides that give the same board (a row of one color, say) share
+// one set of samples, and the samples stay in the table, so asking again about the same board,
+// or about a board one of its slides reaches, picks up where the last solve left off.
+//
+// One solve() (or submit()) at a time; the Result is reused by the next one. Call shutdown() when
+// done.
+public class Solver
+{
+    // --------------------------------------------------------------------------------------------
+    // Constants
+
+    // Refill samples per position before it's considered settled, by default
+    static public final int MAX_SAMPLES = 64;
+
+    static public final double DEFAULT_TURN_VALUE = 10.0;
+
+    static public final int MAX_MOVES = Slides.COUNT;
+
+    // Positions per fork/join leaf
+    static private final int LEAF_SIZE = 16;
+
+    // Sample sums are kept in fixed point so they can be added atomically
+    static private final double FIXED_ONE = 1024.0;
+
+    // --------------------------------------------------------------------------------------------
+    // Result
+
+    // The legal slides from the last solve(), best first
+    static public class Result
+    {
+        private int count_;
+        private int[] moves_ = new int[MAX_MOVES];
+        private double[] values_ = new double[MAX_MOVES];
+        private int[] samples_ = new int[MAX_MOVES];
+        private int positions_;
+        private int rounds_;
+        private long elapsedNanos_;
+
+        // Legal slides found; 0 means the board has no move
+        public int count()
+        {
+            return count_;
+        }
+
+        // Index into Slides
+        public int slide(int rank)
+        {
+            return moves_[rank];
+        }
+
+        public int srcX(int rank)
+        {
+            return Slides.srcX(moves_[rank]);
+        }
+
+        public int srcY(int rank)
+        {
+            return Slides.srcY(moves_[rank]);
+        }
+
+        public int dstX(int rank)
+        {
+            return Slides.dstX(moves_[rank]);
+        }
+
+        public int dstY(int rank)
+        {
+            return Slides.dstY(moves_[rank]);
+        }
+
+        // Mean progress (turns counted at turnValue()) over the samples taken
+        public double value(int rank)
+        {
+            return values_[rank];
+        }
+
+        public int samples(int rank)
+        {
+            return samples_[rank];
+        }
+
+        // Distinct positions the legal slides led to
+        public int positions()
+        {
+            return positions_;
+        }
+
+        public int rounds()
+        {
+            return rounds_;
+        }
+
+        public long elapsedNanos()
+        {
+            return elapsedNanos_;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder out = new StringBuilder();
+            out.append(count_).append(" moves, ").append(positions_).append(" positions, ").append(rounds_).append(" rounds, ");
+            out.append(elapsedNanos_ / 1000).append(" us");
+            for(int rank = 0; (rank < count_) && (rank < 5); rank++)
+            {
+                out.append(String.format("\n  (%d,%d)->(%d,%d) %.2f over %d", srcX(rank), srcY(rank), dstX(rank), dstY(rank), values_[rank], samples_[rank]));
+            }
+            return out.toString();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Member variables
+
+    private ForkJoinPool pool_;
+    private double turnValue_ = DEFAULT_TURN_VALUE;
+    private int maxSamples_ = MAX_SAMPLES;
+    private Result result_ = new Result();
+
+    // Transposition table: open addressing on Board.hash(), linear probing. Key 0 is empty.
+    private int tableMask_;
+    private int tableUsed_;
+    private AtomicLongArray keys_;
+    private AtomicLongArray sums_;
+    private AtomicIntegerArray counts_;
+    private int[] stamps_; // solve generation that last listed the slot as a position
+    private int generation_;
+
+    // This solve: the root, each legal slide's table slot, and each distinct position's slot and
+    // one slide that reaches it
+    private Board root_ = new Board(0);
+    private int[] moveSlots_ = new int[MAX_MOVES];
+    private int[] positionSlots_ = new int[MAX_MOVES];
+    private int[] positionMoves_ = new int[MAX_MOVES];
+    private int positionCount_;
+    private long deadline_;
+    private boolean firstRound_;
+
+    private ThreadLocal<Board> scratch_ = new ThreadLocal<Board>()
+    {
+        @Override
+        protected Board initialValue()
+        {
+            return new Board(0);
+        }
+    };
+
+    // --------------------------------------------------------------------------------------------
+    // Constructor
+
+    // threads: workers to spread each round over; tableBits: log2 of the transposition table
+    // size (each entry is 24 bytes)
+    public Solver(int threads, int tableBits)
+    {
+        pool_ = new ForkJoinPool(threads);
+        tableMask_ = (1 << tableBits) - 1;
+        keys_ = new AtomicLongArray(1 << tableBits);
+        sums_ = new AtomicLongArray(1 << tableBits);
+        counts_ = new AtomicIntegerArray(1 << tableBits);
+        stamps_ = new int[1 << tableBits];
+    }
+
+    public void shutdown()
+    {
+        pool_.shutdown();
+        try
+        {
+            pool_.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // How much progress one extra turn is worth when ranking. Clears the table, whose values
+    // were weighted with the old setting.
+    public void setTurnValue(double turnValue)
+    {
+        turnValue_ = turnValue;
+        clear();
+    }
+
+    public double turnValue()
+    {
+        return turnValue_;
+    }
+
+    // Refill samples per position before solve() stops early. With an unlimited budget this makes
+    // solve() deterministic, given the same table contents. Clears the table.
+    public void setMaxSamples(int maxSamples)
+    {
+        maxSamples_ = maxSamples;
+        clear();
+    }
+
+    public int maxSamples()
+    {
+        return maxSamples_;
+    }
+
+    // Forgets every position's samples
+    public void clear()
+    {
+        for(int i = 0; i <= tableMask_; i++)
+            keys_.set(i, 0);
+        tableUsed_ = 0;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Solving
+
+    // Ranks the legal slides on board (which is left as it was), spending about budgetNanos. The
+    // first round always completes, however long it takes.
+    public Result solve(Board board, long budgetNanos)
+    {
+        long start = System.nanoTime();
+        deadline_ = start + budgetNanos;
+        root_.copyFrom(board);
+
+        // Half full is about where linear probing starts to hurt; starting over is cheaper than
+        // aging entries, and a solve rebuilds what it needs in its first round
+        if(tableUsed_ + MAX_MOVES > (tableMask_ + 1) / 2)
+            clear();
+
+        // Legal slides, and the distinct positions they lead to
+        Board scratch = scratch_.get();
+        int legal = 0;
+        positionCount_ = 0;
+        generation_++;
+        for(int move = 0; move < MAX_MOVES; move++)
+        {
+            scratch.copyFrom(root_);
+            Slides.apply(scratch, move);
+            if(scratch.matches() == 0)
+                continue;
+
+            long key = keyOf(scratch);
+            int slot = find(key);
+            if(slot < 0)
+                slot = insert(key);
+            if(stamps_[slot] != generation_)
+            {
+                stamps_[slot] = generation_;
+                positionSlots_[positionCount_] = slot;
+                positionMoves_[positionCount_] = move;
+                positionCount_++;
+            }
+            result_.moves_[legal] = move;
+            moveSlots_[legal] = slot;
+            legal++;
+        }
+
+        int rounds = 0;
+        if(positionCount_ > 0)
+        {
+            firstRound_ = true;
+            while(true)
+            {
+                pool_.invoke(new Round(0, positionCount_));
+                rounds++;
+                firstRound_ = false;
+                if((System.nanoTime() >= deadline_) || settled())
+                    break;
+            }
+        }
+
+        rank(legal);
+        result_.positions_ = positionCount_;
+        result_.rounds_ = rounds;
+        result_.elapsedNanos_ = System.nanoTime() - start;
+        return result_;
+    }
+
+    // solve() on the pool itself, for callers that can't wait out the budget. Neither board nor
+    // this Solver may be touched until the Future is done.
+    public Future<Result> submit(final Board board, final long budgetNanos)
+    {
+        return pool_.submit(new Callable<Result>()
+        {
+            @Override
+            public Result call()
+            {
+                return solve(board, budgetNanos);
+            }
+        });
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Rounds
+
+    private class Round extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from_;
+        private int to_;
+
+        Round(int from, int to)
+        {
+            from_ = from;
+            to_ = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to_ - from_ > LEAF_SIZE)
+            {
+                int middle = (from_ + to_) >>> 1;
+                invokeAll(new Round(from_, middle), new Round(middle, to_));
+                return;
+            }
+
+            Board board = scratch_.get();
+            for(int i = from_; i < to_; i++)
+            {
+                if(!firstRound_ && (System.nanoTime() >= deadline_))
+                    return;
+                sample(board, positionSlots_[i], positionMoves_[i]);
+            }
+        }
+    }
+
+    // One more playout of the position in slot: replay a slide that reaches it, then resolve with
+    // this sample's refills
+    private void sample(Board board, int slot, int move)
+    {
+        int count = counts_.get(slot);
+        if(count >= maxSamples_)
+            return;
+        int index = counts_.getAndIncrement(slot);
+        if(index >= maxSamples_)
+            return;
+
+        long key = keys_.get(slot);
+        board.copyFrom(root_);
+        Slides.apply(board, move);
+        board.setSeed(key + (index * 0x9E3779B97F4A7C15L));
+        board.setProgress(0);
+        board.setTurns(0);
+        board.resolve();
+
+        double value = board.progress() + (board.turns() * turnValue_);
+        sums_.getAndAdd(slot, (long)(value * FIXED_ONE));
+    }
+
+    private boolean settled()
+    {
+        for(int i = 0; i < positionCount_; i++)
+        {
+            if(counts_.get(positionSlots_[i]) < maxSamples_)
+                return false;
+        }
+        return true;
+    }
+
+    // Fills the result with the legal slides, highest value first (ties keep enumeration order)
+    private void rank(int legal)
+    {
+        int[] moves = result_.moves_;
+        double[] values = result_.values_;
+        int[] samples = result_.samples_;
+        for(int i = 0; i < legal; i++)
+        {
+            int slot = moveSlots_[i];
+            int count = Math.min(counts_.get(slot), maxSamples_);
+            int move = moves[i];
+            double value = (count > 0) ? (sums_.get(slot) / FIXED_ONE) / count : 0;
+
+            int j = i;
+            while((j > 0) && (values[j - 1] < value))
+            {
+                moves[j] = moves[j - 1];
+                values[j] = values[j - 1];
+                samples[j] = samples[j - 1];
+                j--;
+            }
+            moves[j] = move;
+            values[j] = value;
+            samples[j] = count;
+        }
+        result_.count_ = legal;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Transposition table
+
+    static private long keyOf(Board board)
+    {
+        long key = board.hash();
+        return (key != 0) ? key : 1;
+    }
+
+    private int find(long key)
+    {
+        int slot = (int)key & tableMask_;
+        while(true)
+        {
+            long k = keys_.get(slot);
+            if(k == key)
+                return slot;
+            if(k == 0)
+                return -1;
+            slot = (slot + 1) & tableMask_;
+        }
+    }
+
+    // Only called from solve()'s own thread, before any round starts
+    private int insert(long key)
+    {
+        int slot = (int)key & tableMask_;
+        while(keys_.get(slot) != 0)
+            slot = (slot + 1) & tableMask_;
+        keys_.set(slot, key);
+        sums_.set(slot, 0);
+        counts_.set(slot, 0);
+        tableUsed_++;
+        return slot;
+    }
+}